@@ -0,0 +1,88 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.BookshopApplication;
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Uruchamianie aplikacji na potrzeby testów wydajnościowych - domyślnie na wbudowanej bazie Derby przechowywanej
+ * w pamięci, bez serwera HTTP lub z serwerem na losowym porcie.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {}
+
+    /**
+     * @param properties dodatkowe właściwości konfiguracyjne w postaci klucz=wartość
+     * @return kontekst aplikacji połączonej z nową, pustą bazą danych
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return run(false, properties);
+    }
+
+    /**
+     * @param properties dodatkowe właściwości konfiguracyjne w postaci klucz=wartość
+     * @return kontekst aplikacji z serwerem HTTP na losowym porcie (właściwość local.server.port), połączonej z nową,
+     * pustą bazą danych
+     */
+    static ConfigurableApplicationContext startServer(String... properties) {
+        List<String> all = new ArrayList<>(Arrays.asList(properties));
+        all.add("server.port=0");
+        all.add("management.port=-1");
+        return run(true, all.toArray(new String[all.size()]));
+    }
+
+    private static ConfigurableApplicationContext run(boolean web, String... properties) {
+        //właściwości są przekazywane jak argumenty wiersza poleceń, aby miały pierwszeństwo przed application.properties
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("spring.datasource.url", "jdbc:derby:memory:bench-" + UUID.randomUUID() + ";create=true");
+        all.put("spring.datasource.driver-class-name", "org.apache.derby.jdbc.EmbeddedDriver");
+        all.put("spring.main.banner-mode", "off");
+        all.put("logging.level.root", "ERROR");
+        //podane właściwości zastępują domyślne - powtórzony argument miałby wartość złożoną z obu wartości
+        for (String property : properties) {
+            int separator = property.indexOf('=');
+            all.put(property.substring(0, separator), property.substring(separator + 1));
+        }
+
+        String[] args = all.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+
+        return new SpringApplicationBuilder(BookshopApplication.class)
+                .web(web)
+                .run(args);
+    }
+
+    /**
+     * Dodanie do katalogu podanej liczby książek.
+     *
+     * @param context kontekst aplikacji
+     * @param count liczba książek
+     * @param amount liczba sztuk każdej książki
+     * @return identyfikatory dodanych książek
+     */
+    static List<UUID> addBooks(ConfigurableApplicationContext context, int count, int amount) {
+        BooksService booksService = context.getBean(BooksService.class);
+
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Book book = new Book();
+            book.setTitle("Benchmark book " + i);
+            book.setCost(1 + i % 100);
+            book.setAmount(amount);
+            booksService.addBook(book);
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+}
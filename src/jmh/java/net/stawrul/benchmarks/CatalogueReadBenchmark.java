@@ -0,0 +1,70 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Czas odczytu katalogu: pełnej listy książek (BooksService.findAll) i pojedynczej książki (BooksService.find) -
+ * z pamięcią podręczną drugiego poziomu Hibernate i bez niej.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CatalogueReadBenchmark {
+
+    @Param({"100", "10000"})
+    int catalogueSize;
+
+    //pamięć podręczna drugiego poziomu (książki i wynik zapytania Book.FIND_ALL)
+    @Param({"false", "true"})
+    boolean secondLevelCache;
+
+    private ConfigurableApplicationContext context;
+    private BooksService booksService;
+    private List<UUID> bookIds;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache,
+                "spring.jpa.properties.hibernate.cache.use_query_cache=" + secondLevelCache);
+        booksService = context.getBean(BooksService.class);
+        bookIds = BenchmarkContext.addBooks(context, catalogueSize, 10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Book> findAll() {
+        return booksService.findAll();
+    }
+
+    @Benchmark
+    public Book find() {
+        return booksService.find(bookIds.get(ThreadLocalRandom.current().nextInt(catalogueSize)));
+    }
+}
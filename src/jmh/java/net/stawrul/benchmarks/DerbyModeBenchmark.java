@@ -0,0 +1,140 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.apache.derby.drda.NetworkServerControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Czas składania zamówienia (OrdersService.placeOrder) i odczytu całego katalogu (BooksService.findAll) przy
+ * połączeniu z serwerem Derby przez sieć (CLIENT - ClientDriver40, jak w application.properties) i z bazą Derby
+ * uruchomioną w procesie aplikacji (EMBEDDED - profil embedded).
+ * <p>
+ * W trybie CLIENT serwer sieciowy Derby działa w tej samej maszynie wirtualnej i łączy się z nim przez interfejs
+ * lokalny (localhost) - oba tryby korzystają z tej samej bazy zapisanej na dysku i tych samych ustawień Derby
+ * (właściwości derby.* profilu embedded), więc różnica czasu wynika z komunikacji przez sieć. Pamięć podręczna
+ * drugiego poziomu Hibernate jest wyłączona, aby każda operacja wykonywała zapytania SQL. Przykład:
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="DerbyMode -p catalogueSize=1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DerbyModeBenchmark {
+
+    @Param({"CLIENT", "EMBEDDED"})
+    String mode;
+
+    @Param({"200"})
+    int catalogueSize;
+
+    private Path directory;
+    private NetworkServerControl server;
+    private ConfigurableApplicationContext context;
+    private OrdersService ordersService;
+    private BooksService booksService;
+    private List<UUID> bookIds;
+
+    @Setup
+    public void setUp() throws Exception {
+        //katalog bazy danych musi być ustawiony przed uruchomieniem silnika Derby (również przez serwer sieciowy)
+        directory = Files.createTempDirectory("derby-mode");
+        System.setProperty("derby.system.home", directory.toString());
+
+        String url = "jdbc:derby:dk_db;create=true";
+        String driver = "org.apache.derby.jdbc.EmbeddedDriver";
+        if ("CLIENT".equals(mode)) {
+            int port = freePort();
+            server = new NetworkServerControl(InetAddress.getLoopbackAddress(), port);
+            server.start(new PrintWriter(System.err));
+            waitForServer();
+            url = "jdbc:derby://localhost:" + port + "/dk_db;create=true";
+            driver = "org.apache.derby.jdbc.ClientDriver40";
+        }
+
+        context = BenchmarkContext.start(
+                "spring.profiles.active=embedded",
+                "spring.datasource.url=" + url,
+                "spring.datasource.driver-class-name=" + driver,
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false");
+        ordersService = context.getBean(OrdersService.class);
+        booksService = context.getBean(BooksService.class);
+        bookIds = BenchmarkContext.addBooks(context, catalogueSize, Integer.MAX_VALUE / 2);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        if (server != null) {
+            server.shutdown();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Order placeOrder() {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(bookIds.get(ThreadLocalRandom.current().nextInt(catalogueSize)), 1));
+        ordersService.placeOrder(order);
+        return order;
+    }
+
+    @Benchmark
+    public List<Book> findAll() {
+        return booksService.findAll();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    //serwer jest uruchamiany w osobnym wątku - ping kończy się wyjątkiem, dopóki serwer nie przyjmuje połączeń
+    private void waitForServer() throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                server.ping();
+                return;
+            } catch (Exception e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.utils.Uuids;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Czas zapisu i odczytu książek i zamówień w dużej bazie Derby (zapisanej na dysku) w zależności od sposobu
+ * przechowywania identyfikatorów:
+ * <ul>
+ * <li>BEFORE - kolumny VARCHAR(255) FOR BIT DATA, losowe identyfikatory (UUID.randomUUID), brak indeksu
+ * order_lines.book_id,</li>
+ * <li>AFTER - kolumny CHAR(16) FOR BIT DATA, identyfikatory uporządkowane według czasu (Uuids.timeOrdered), indeks
+ * order_lines_book_idx.</li>
+ * </ul>
+ * Zapytania odpowiadają zapytaniom aplikacji (Book.FIND_BY_IDS przy składaniu zamówienia, zamówienie z pozycjami,
+ * zamówienia zawierające książkę), ale są wykonywane bezpośrednio przez JDBC, aby schemat BEFORE nie zależał od
+ * aktualnego mapowania encji. Przykład:
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="KeyLayout -p rows=200000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class KeyLayoutBenchmark {
+
+    //liczba pozycji każdego zamówienia i liczba książek wyszukiwanych jednym zapytaniem
+    private static final int LINES = 3;
+    private static final int BASKET = 50;
+
+    @Param({"BEFORE", "AFTER"})
+    String layout;
+
+    //liczba książek i zamówień w bazie danych
+    @Param({"100000"})
+    int rows;
+
+    private Path directory;
+    private Connection connection;
+    private List<byte[]> bookIds;
+    private List<byte[]> orderIds;
+
+    private PreparedStatement insertOrder;
+    private PreparedStatement insertLine;
+    private PreparedStatement findBooks;
+    private PreparedStatement findOrder;
+    private PreparedStatement findOrdersOfBook;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("key-layout");
+        connection = DriverManager.getConnection("jdbc:derby:" + directory.resolve("db") + ";create=true");
+        createSchema();
+
+        insertOrder = connection.prepareStatement(
+                "INSERT INTO orders (id, creation_date, total_value) VALUES (?, ?, ?)");
+        insertLine = connection.prepareStatement(
+                "INSERT INTO order_lines (order_id, book_id, quantity, unit_cost) VALUES (?, ?, 1, 10)");
+        StringBuilder in = new StringBuilder("?");
+        for (int i = 1; i < BASKET; i++) {
+            in.append(", ?");
+        }
+        findBooks = connection.prepareStatement("SELECT * FROM book WHERE id IN (" + in + ")");
+        findOrder = connection.prepareStatement("SELECT * FROM orders o LEFT JOIN order_lines l "
+                + "ON l.order_id = o.id WHERE o.id = ?");
+        findOrdersOfBook = connection.prepareStatement("SELECT o.id, o.total_value FROM order_lines l "
+                + "JOIN orders o ON o.id = l.order_id WHERE l.book_id = ?");
+
+        connection.setAutoCommit(false);
+        bookIds = new ArrayList<>(rows);
+        try (PreparedStatement insertBook = connection.prepareStatement(
+                "INSERT INTO book (id, title, amount, cost, version) VALUES (?, ?, 1000, 10, 0)")) {
+            for (int i = 0; i < rows; i++) {
+                byte[] id = newId();
+                insertBook.setBytes(1, id);
+                insertBook.setString(2, "Book " + i);
+                insertBook.addBatch();
+                bookIds.add(id);
+                if (i % 1000 == 999) {
+                    insertBook.executeBatch();
+                    connection.commit();
+                }
+            }
+            insertBook.executeBatch();
+        }
+        orderIds = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            orderIds.add(addOrder(false));
+            if (i % 1000 == 999) {
+                insertOrder.executeBatch();
+                insertLine.executeBatch();
+                connection.commit();
+            }
+        }
+        insertOrder.executeBatch();
+        insertLine.executeBatch();
+        connection.commit();
+
+        try (Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"BOOK", "ORDERS", "ORDER_LINES"}) {
+                statement.execute("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS('APP', '" + table + "', NULL)");
+            }
+        }
+        connection.commit();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        connection.rollback();
+        connection.close();
+        try {
+            DriverManager.getConnection("jdbc:derby:" + directory.resolve("db") + ";shutdown=true");
+        } catch (SQLException e) {
+            //zamknięcie bazy danych jest zawsze sygnalizowane wyjątkiem
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public byte[] placeOrder() throws SQLException {
+        byte[] id = addOrder(true);
+        connection.commit();
+        return id;
+    }
+
+    @Benchmark
+    public int findBooks() throws SQLException {
+        for (int i = 0; i < BASKET; i++) {
+            findBooks.setBytes(i + 1, random(bookIds));
+        }
+        return count(findBooks);
+    }
+
+    @Benchmark
+    public int findOrderWithLines() throws SQLException {
+        findOrder.setBytes(1, random(orderIds));
+        return count(findOrder);
+    }
+
+    @Benchmark
+    public int findOrdersOfBook() throws SQLException {
+        findOrdersOfBook.setBytes(1, random(bookIds));
+        return count(findOrdersOfBook);
+    }
+
+    private void createSchema() throws SQLException {
+        boolean after = "AFTER".equals(layout);
+        String uuid = after ? "CHAR(16) FOR BIT DATA" : "VARCHAR(255) FOR BIT DATA";
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE book (id " + uuid + " NOT NULL, amount INTEGER, cost INTEGER, "
+                    + "date TIMESTAMP, oprawa VARCHAR(255), title VARCHAR(255), title_key VARCHAR(255), "
+                    + "version BIGINT, PRIMARY KEY (id))");
+            statement.execute("CREATE TABLE orders (id " + uuid + " NOT NULL, creation_date TIMESTAMP, "
+                    + "idempotency_key VARCHAR(255), total_value INTEGER, PRIMARY KEY (id))");
+            statement.execute("CREATE TABLE order_lines (order_id " + uuid + " NOT NULL, book_id " + uuid
+                    + " NOT NULL, quantity INTEGER NOT NULL, unit_cost INTEGER)");
+            statement.execute("ALTER TABLE order_lines ADD CONSTRAINT order_lines_order_fk FOREIGN KEY (order_id) "
+                    + "REFERENCES orders");
+            if (after) {
+                statement.execute("CREATE INDEX order_lines_book_idx ON order_lines (book_id)");
+                statement.execute("CREATE INDEX orders_creation_date_idx ON orders (creation_date, id)");
+            }
+        }
+    }
+
+    //dodanie zamówienia z losowymi pozycjami - od razu lub jako część wsadu
+    private byte[] addOrder(boolean execute) throws SQLException {
+        byte[] id = newId();
+        insertOrder.setBytes(1, id);
+        insertOrder.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+        insertOrder.setInt(3, LINES * 10);
+        if (execute) {
+            insertOrder.executeUpdate();
+        } else {
+            insertOrder.addBatch();
+        }
+
+        for (int i = 0; i < LINES; i++) {
+            insertLine.setBytes(1, id);
+            insertLine.setBytes(2, random(bookIds));
+            insertLine.addBatch();
+        }
+        if (execute) {
+            insertLine.executeBatch();
+        }
+        return id;
+    }
+
+    private byte[] newId() {
+        UUID uuid = "AFTER".equals(layout) ? Uuids.timeOrdered() : UUID.randomUUID();
+        return ByteBuffer.allocate(Uuids.LENGTH)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    private static byte[] random(List<byte[]> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private static int count(PreparedStatement query) throws SQLException {
+        int count = 0;
+        try (ResultSet results = query.executeQuery()) {
+            while (results.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,86 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.OrderRetryPolicy;
+import net.stawrul.services.OrdersService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przepustowość składania zamówień (OrdersService.placeOrder) w zależności od liczby pozycji zamówienia, sposobu
+ * zmniejszania stanów magazynowych i konfiguracji dostępu do bazy danych (domyślna lub profil perf z pulą HikariCP).
+ * <p>
+ * Liczbę wątków ustala się parametrem -t, np.:
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="OrderPlacement -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OrderPlacementBenchmark {
+
+    //liczba książek w katalogu - przy wielu wątkach zamówienia często obejmują te same tytuły
+    private static final int CATALOGUE_SIZE = 200;
+
+    @Param({"1", "10", "100"})
+    int basketSize;
+
+    @Param({"ENTITY", "CONDITIONAL_UPDATE", "LEDGER"})
+    String stockMode;
+
+    @Param({"default", "perf"})
+    String profile;
+
+    private ConfigurableApplicationContext context;
+    private OrdersService ordersService;
+    private OrderRetryPolicy orderRetryPolicy;
+    private List<UUID> bookIds;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("bookshop.orders.stock-mode=" + stockMode,
+                "spring.profiles.active=" + profile);
+        ordersService = context.getBean(OrdersService.class);
+        orderRetryPolicy = context.getBean(OrderRetryPolicy.class);
+        bookIds = BenchmarkContext.addBooks(context, CATALOGUE_SIZE, Integer.MAX_VALUE / 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order placeOrder() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        Order order = new Order();
+        for (int i = 0; i < basketSize; i++) {
+            order.getBooks().add(new Book(bookIds.get(random.nextInt(CATALOGUE_SIZE))));
+        }
+
+        //w trybie ENTITY zamówienia tych samych tytułów z wielu wątków są ponawiane po konflikcie wersji książki
+        //(jak w POST /orders)
+        orderRetryPolicy.run(() -> ordersService.placeOrder(order));
+        return order;
+    }
+}
@@ -0,0 +1,87 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.OrdersService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Koszt walidacji zamówienia (OrdersService.validateOrder) i wyznaczania jego wartości (OrdersService.getTotalValue)
+ * w zależności od liczby pozycji zamówienia i sposobu walidacji: FIRST_ERROR, COLLECT_ALL (sekwencyjnie) oraz
+ * COLLECT_ALL_PARALLEL (równolegle, niezależnie od liczby pozycji). Walidacja na podstawie wcześniej pobranej mapy
+ * książek (validateLoadedOrder) nie obejmuje kosztu zapytań do bazy danych.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OrderValidationBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    int basketSize;
+
+    @Param({"FIRST_ERROR", "COLLECT_ALL", "COLLECT_ALL_PARALLEL"})
+    String validation;
+
+    private ConfigurableApplicationContext context;
+    private OrdersService ordersService;
+    private Order order;
+    private Map<UUID, Book> books;
+
+    @Setup
+    public void setUp() {
+        boolean parallel = validation.endsWith("_PARALLEL");
+        context = BenchmarkContext.start(
+                "bookshop.orders.validation.mode=" + (parallel ? "COLLECT_ALL" : validation),
+                "bookshop.orders.validation.parallel-threshold=" + (parallel ? 1 : Integer.MAX_VALUE));
+        ordersService = context.getBean(OrdersService.class);
+
+        List<UUID> bookIds = BenchmarkContext.addBooks(context, Math.min(basketSize, 5000), 10);
+        order = new Order();
+        for (int i = 0; i < basketSize; i++) {
+            order.getBooks().add(new Book(bookIds.get(i % bookIds.size())));
+        }
+        books = ordersService.findBooks(order);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order validateOrder() {
+        ordersService.validateOrder(order);
+        return order;
+    }
+
+    @Benchmark
+    public Order validateLoadedOrder() {
+        ordersService.validateOrder(order, books);
+        return order;
+    }
+
+    @Benchmark
+    public int getTotalValue() {
+        return ordersService.getTotalValue(order);
+    }
+}
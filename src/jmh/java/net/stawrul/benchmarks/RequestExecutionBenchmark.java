@@ -0,0 +1,126 @@
+package net.stawrul.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test obciążeniowy serwera HTTP: rozkład czasu odpowiedzi (w tym percentyl p0.99) żądań GET /books/{id}
+ * i POST /orders przy obsłudze żądań w wątkach serwera (bookshop.web.execution-mode=BLOCKING) i w osobnej puli wątków
+ * (ASYNC), gdy każde zapytanie SQL trwa dbLatencyMs milisekund (SlowStatements).
+ * <p>
+ * Liczba klientów (wątków JMH, domyślnie 64) jest większa niż liczba wątków serwera (serverThreads), więc w trybie
+ * BLOCKING żądania czekają na wolny wątek serwera, a w trybie ASYNC - na jeden z dbThreads wątków puli. Przykład:
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="RequestExecution -t 128"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class RequestExecutionBenchmark {
+
+    private static final int CATALOGUE_SIZE = 200;
+
+    @Param({"BLOCKING", "ASYNC"})
+    String mode;
+
+    @Param({"8"})
+    int serverThreads;
+
+    @Param({"32"})
+    int dbThreads;
+
+    @Param({"5", "50"})
+    long dbLatencyMs;
+
+    private ConfigurableApplicationContext context;
+    private String baseUrl;
+    private List<UUID> bookIds;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.startServer(
+                "bookshop.web.execution-mode=" + mode,
+                "server.tomcat.max-threads=" + serverThreads,
+                "bookshop.web.async.threads=" + dbThreads,
+                "bookshop.orders.stock-mode=CONDITIONAL_UPDATE",
+                "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                        + SlowStatements.class.getName());
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        bookIds = BenchmarkContext.addBooks(context, CATALOGUE_SIZE, Integer.MAX_VALUE / 2);
+        SlowStatements.latencyMs = dbLatencyMs;
+    }
+
+    @TearDown
+    public void tearDown() {
+        SlowStatements.latencyMs = 0;
+        context.close();
+    }
+
+    @Benchmark
+    public int getBook() throws IOException {
+        HttpURLConnection connection = open("/books/" + randomBook());
+        return finish(connection, 200);
+    }
+
+    @Benchmark
+    public int placeOrder() throws IOException {
+        HttpURLConnection connection = open("/orders");
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            String order = "{\"lines\": [{\"bookId\": \"" + randomBook() + "\", \"quantity\": 1}]}";
+            out.write(order.getBytes(StandardCharsets.UTF_8));
+        }
+        return finish(connection, 201);
+    }
+
+    private UUID randomBook() {
+        return bookIds.get(ThreadLocalRandom.current().nextInt(CATALOGUE_SIZE));
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    }
+
+    //odczyt całej odpowiedzi pozwala na ponowne użycie połączenia (keep-alive)
+    private static int finish(HttpURLConnection connection, int expected) throws IOException {
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            while (in != null && in.read(buffer) >= 0) {
+                //pominięcie treści odpowiedzi
+            }
+        }
+        if (status != expected) {
+            throw new IllegalStateException("Unexpected response status " + status);
+        }
+        return status;
+    }
+}
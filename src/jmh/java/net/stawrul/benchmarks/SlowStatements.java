@@ -0,0 +1,27 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.metrics.SqlStatementCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Symulacja wolnej bazy danych na potrzeby testów wydajnościowych - każde zapytanie SQL przygotowywane przez Hibernate
+ * jest opóźniane o stały czas (np. czas przesyłania danych przez sieć do serwera Derby).
+ * <p>
+ * Klasa jest rejestrowana zamiast SqlStatementCounter właściwością
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector.
+ */
+public class SlowStatements extends SqlStatementCounter {
+
+    static volatile long latencyMs;
+
+    @Override
+    public String inspect(String sql) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return super.inspect(sql);
+    }
+}
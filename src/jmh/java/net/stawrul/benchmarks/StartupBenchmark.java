@@ -0,0 +1,167 @@
+package net.stawrul.benchmarks;
+
+import net.stawrul.BookshopApplication;
+import net.stawrul.model.Book;
+import net.stawrul.utils.Uuids;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Czas uruchamiania aplikacji (z serwerem HTTP) bez profilu (default), z profilem fast (ddl-auto=none, leniwe
+ * tworzenie komponentów) oraz z konfiguracją sprzed wprowadzenia migracji (update - ddl-auto=update, bez Flyway):
+ * do zakończenia metody SpringApplication.run (start) oraz do otrzymania odpowiedzi na pierwsze żądania
+ * GET /books/{id} i GET /books (firstResponse), które w profilu fast ponoszą koszt utworzenia komponentów.
+ * <p>
+ * Każdy pomiar jest wykonywany w nowej maszynie wirtualnej (uruchomienie "na zimno"), na bazie Derby zapisanej na
+ * dysku, z katalogiem books książek utworzonym przez migracje Flyway. Przykład:
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="Startup -f 10"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+
+    //użytkownik z application.properties - jego nazwa jest nazwą schematu bazy danych
+    private static final String USER = "dk";
+
+    @Param({"update", "default", "fast"})
+    String profile;
+
+    @Param({"10000"})
+    int books;
+
+    private Path directory;
+    private UUID bookId;
+    private ConfigurableApplicationContext context;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("startup");
+
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName(database());
+        dataSource.setCreateDatabase("create");
+        dataSource.setUser(USER);
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(dataSource);
+        flyway.migrate();
+
+        List<UUID> ids = new ArrayList<>(books);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO book "
+                     + "(id, title, title_key, amount, cost, version) VALUES (?, ?, ?, 10, 10, 0)")) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < books; i++) {
+                UUID id = Uuids.timeOrdered();
+                insert.setBytes(1, ByteBuffer.allocate(Uuids.LENGTH)
+                        .putLong(id.getMostSignificantBits())
+                        .putLong(id.getLeastSignificantBits())
+                        .array());
+                insert.setString(2, "Startup book " + i);
+                insert.setString(3, Book.titleKey("Startup book " + i));
+                insert.addBatch();
+                ids.add(id);
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        bookId = ids.get(books / 2);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        context.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext start() {
+        context = run();
+        return context;
+    }
+
+    @Benchmark
+    public int firstResponse() throws IOException {
+        context = run();
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        return get(baseUrl + "/books/" + bookId) + get(baseUrl + "/books");
+    }
+
+    private ConfigurableApplicationContext run() {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.datasource.url=jdbc:derby:" + database());
+        args.add("--spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver");
+        args.add("--server.port=0");
+        args.add("--management.port=-1");
+        args.add("--spring.main.banner-mode=off");
+        args.add("--logging.level.root=ERROR");
+        if ("update".equals(profile)) {
+            args.add("--spring.jpa.hibernate.ddl-auto=update");
+            args.add("--flyway.enabled=false");
+        } else if ("fast".equals(profile)) {
+            args.add("--spring.profiles.active=fast");
+        }
+        return new SpringApplicationBuilder(BookshopApplication.class).run(args.toArray(new String[args.size()]));
+    }
+
+    private String database() {
+        return directory.resolve("db").toString();
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        int status = connection.getResponseCode();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0) {
+                //pominięcie treści odpowiedzi
+            }
+        }
+        if (status != 200) {
+            throw new IllegalStateException("Unexpected response status " + status);
+        }
+        return status;
+    }
+}
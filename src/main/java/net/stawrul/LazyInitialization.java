@@ -0,0 +1,41 @@
+package net.stawrul;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Leniwe tworzenie komponentów aplikacji (bookshop.lazy-initialization=true, profil fast) - komponenty są tworzone
+ * przy pierwszym użyciu, a nie przy starcie aplikacji.
+ * <p>
+ * Aplikacja zaczyna przyjmować żądania szybciej, ale czas utworzenia komponentów (np. wczytania indeksu tytułów czy
+ * uruchomienia wątków OrderIngestService) wydłuża obsługę pierwszych żądań. Komponenty oznaczone adnotacją
+ * {@literal @}Lazy(false) oraz komponenty infrastruktury Springa są nadal tworzone przy starcie. Przy starcie jest
+ * tworzona również fabryka EntityManager (wraz ze źródłem danych i migracjami Flyway) - Spring tworzy od razu
+ * wszystkie komponenty LoadTimeWeaverAware.
+ */
+@Component
+@ConditionalOnProperty(name = "bookshop.lazy-initialization", havingValue = "true")
+public class LazyInitialization implements BeanFactoryPostProcessor {
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE || hasExplicitLazy(definition)) {
+                continue;
+            }
+            definition.setLazyInit(true);
+        }
+    }
+
+    //ustawienie podane adnotacją @Lazy (true lub false) jest zachowywane
+    private static boolean hasExplicitLazy(BeanDefinition definition) {
+        return definition instanceof AnnotatedBeanDefinition
+                && ((AnnotatedBeanDefinition) definition).getMetadata().isAnnotated(Lazy.class.getName());
+    }
+}
@@ -1,16 +1,34 @@
 package net.stawrul.controllers;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.stawrul.model.Book;
+import net.stawrul.services.BookImportService;
+import net.stawrul.services.BookSearch;
 import net.stawrul.services.BooksService;
+import net.stawrul.services.CatalogueVersion;
+import net.stawrul.services.ImportReport;
+import net.stawrul.services.Page;
 import net.stawrul.services.exceptions.ValidationException;
+import net.stawrul.utils.Oprawa;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.InputStream;
 import java.net.URI;
-import java.util.List;
+import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
+import static org.springframework.format.annotation.DateTimeFormat.ISO.DATE;
 import static org.springframework.http.HttpStatus.CONFLICT;
 
 
@@ -18,31 +36,148 @@ import static org.springframework.http.HttpStatus.CONFLICT;
  * Kontroler zawierający akcje związane z książkami w sklepie.
  *
  * Parametr "/books" w adnotacji @RequestMapping określa prefix dla adresów wszystkich akcji kontrolera.
+ *
+ * Akcje są wykonywane w wątku serwera HTTP, który obsłużył żądanie (bookshop.web.execution-mode=BLOCKING), a w trybie
+ * ASYNC - w wątkach puli RequestExecutor. W trybie ASYNC każda akcja może dodatkowo zwrócić odpowiedź 503 Service
+ * Unavailable, jeśli osiągnięto limit oczekujących żądań (bookshop.web.async.max-requests) lub upłynął czas obsługi
+ * żądania (bookshop.web.async.timeout-ms).
  */
 @RestController
 @RequestMapping("/books")
 public class BooksController {
 
+    //Liczba książek na stronie, jeśli klient podał tylko kursor
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    //Typ MIME dla formatu NDJSON (ang. newline-delimited JSON)
+    static final String NDJSON = "application/x-ndjson";
+
     //Komponent realizujący logikę biznesową operacji na książkach
     final BooksService booksService;
 
-    //Instancja klasy BooksService zostanie dostarczona przez framework Spring
-    //(wstrzykiwanie zależności przez konstruktor).
-    public BooksController(BooksService booksService) {
+    //Komponent realizujący import dużej liczby książek
+    final BookImportService bookImportService;
+
+    //Licznik zmian katalogu - znaczniki ETag odpowiedzi GET /books i GET /books/{id}
+    final CatalogueVersion catalogueVersion;
+
+    //Obiekt odczytujący książki w formacie JSON (ten sam, którego używa framework Spring)
+    final ObjectMapper objectMapper;
+
+    //Pula wątków wykonujących akcje kontrolera - null, jeśli bookshop.web.execution-mode=BLOCKING
+    RequestExecutor requestExecutor;
+
+    //Instancje klas BooksService, BookImportService, CatalogueVersion i ObjectMapper zostaną dostarczone przez
+    //framework Spring (wstrzykiwanie zależności przez konstruktor).
+    public BooksController(BooksService booksService, BookImportService bookImportService,
+                           CatalogueVersion catalogueVersion, ObjectMapper objectMapper) {
         this.booksService = booksService;
+        this.bookImportService = bookImportService;
+        this.catalogueVersion = catalogueVersion;
+        this.objectMapper = objectMapper;
+    }
+
+    @Autowired(required = false)
+    public void setRequestExecutor(RequestExecutor requestExecutor) {
+        this.requestExecutor = requestExecutor;
     }
 
     /**
-     * Pobieranie listy wszystkich książek.
+     * Pobieranie listy książek.
      *
      * Żądanie:
      * GET /books
+     * GET /books?limit={limit}&after={kursor}
+     *
+     * Bez parametrów zwracana jest lista wszystkich książek. Jeśli podano parametr limit, zwracana jest jedna strona
+     * listy, a adres następnej strony jest przekazywany w nagłówku Link (rel="next").
+     *
+     * Pełna lista zawiera nagłówki ETag i Last-Modified. Jeśli katalog nie zmienił się od czasu wskazanego w nagłówku
+     * If-None-Match lub If-Modified-Since żądania, zwracana jest odpowiedź 304 Not Modified bez pobierania listy.
+     *
+     * @param limit liczba książek na stronie
+     * @param after kursor wskazujący na koniec poprzedniej strony
+     * @param uriBuilder pomocniczy obiekt do budowania adresu następnej strony
+     * @param headers nagłówki żądania (nagłówki warunkowe)
      *
-     * @return lista książek
+     * @return lista książek, odpowiedź 304 Not Modified lub odpowiedź 400 Bad Request w przypadku nieprawidłowego
+     * limitu lub kursora
      */
     @GetMapping
-    public List<Book> listBooks() {
-        return booksService.findAll();
+    public Object listBooks(@RequestParam(required = false) Integer limit,
+                            @RequestParam(required = false) String after,
+                            UriComponentsBuilder uriBuilder,
+                            @RequestHeader HttpHeaders headers) throws Exception {
+        return execute(() -> {
+            if (limit == null && after == null) {
+                //znacznik jest odczytywany przed pobraniem listy - lista może być nowsza niż znacznik, ale nigdy
+                //starsza
+                String etag = catalogueVersion.etag();
+                long lastModified = catalogueVersion.lastModified();
+
+                ResponseEntity<?> notModified = ConditionalResponses.notModified(headers, etag, lastModified);
+                if (notModified != null) {
+                    return notModified;
+                }
+                return ConditionalResponses.ok(etag, lastModified).body(booksService.findAll());
+            }
+
+            try {
+                Page<Book> page = booksService.findPage(after, limit != null ? limit : DEFAULT_PAGE_SIZE);
+                return Pages.toResponse(page, uriBuilder.path("/books"), limit);
+
+            } catch (ValidationException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Wyszukiwanie książek.
+     *
+     * Żądanie:
+     * GET /books/search?title={tytuł}&contains={true|false}&oprawa={oprawa}&minCost={cena}&maxCost={cena}
+     *     &from={rrrr-mm-dd}&to={rrrr-mm-dd}&limit={limit}&after={kursor}
+     *
+     * Wszystkie parametry są opcjonalne, a zwracane są książki spełniające wszystkie podane kryteria. Parametr title
+     * oznacza początek tytułu lub - jeśli contains=true - dowolny jego fragment (bez rozróżniania wielkości liter).
+     * Zakres dat obejmuje oba podane dni. Wyniki są stronicowane, a adres następnej strony jest przekazywany
+     * w nagłówku Link (rel="next").
+     *
+     * @return strona wyników lub odpowiedź 400 Bad Request w przypadku nieprawidłowych parametrów
+     */
+    @GetMapping("/search")
+    public Object searchBooks(@RequestParam(required = false) String title,
+                              @RequestParam(defaultValue = "false") boolean contains,
+                              @RequestParam(required = false) Oprawa oprawa,
+                              @RequestParam(required = false) Integer minCost,
+                              @RequestParam(required = false) Integer maxCost,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DATE) Date from,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DATE) Date to,
+                              @RequestParam(required = false) Integer limit,
+                              @RequestParam(required = false) String after) throws Exception {
+        BookSearch search = new BookSearch();
+        search.setTitle(title);
+        search.setTitleContains(contains);
+        search.setOprawa(oprawa);
+        search.setMinCost(minCost);
+        search.setMaxCost(maxCost);
+        search.setDateFrom(from);
+        //koniec zakresu obejmuje cały podany dzień
+        search.setDateBefore(to != null ? new Date(to.getTime() + TimeUnit.DAYS.toMillis(1)) : null);
+
+        return execute(() -> {
+            try {
+                Page<Book> page = booksService.search(search, after, limit != null ? limit : DEFAULT_PAGE_SIZE);
+                UriComponentsBuilder next = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("limit")
+                        .replaceQueryParam("after");
+                return Pages.toResponse(page, next, limit);
+
+            } catch (ValidationException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        });
     }
 
     /**
@@ -57,25 +192,55 @@ public class BooksController {
      * @param uriBuilder pomocniczy obiekt do budowania adresu wskazującego na nowo dodaną książkę,
      *                   zostanie wstrzyknięty przez framework Spring
      *
-     * @return odpowiedź HTTP dla klienta
+     * @return odpowiedź HTTP dla klienta; w trybie ASYNC odpowiedź 500 Internal Server Error bez nagłówka Retry-After,
+     * jeśli czas obsługi żądania upłynął w trakcie zapisu książki
      */
     @PostMapping
-    public ResponseEntity<String> addBook(@RequestBody Book book, UriComponentsBuilder uriBuilder) {
+    public Object addBook(@RequestBody Book book, UriComponentsBuilder uriBuilder) throws Exception {
+        return execute(() -> {
+            if (booksService.find(book.getId()) == null) {
+                try {
+                    booksService.addBook(book);
 
-        if (booksService.find(book.getId()) == null) {
-            try {
-                booksService.addBook(book);
+                    URI location = uriBuilder.path("/books/{id}").buildAndExpand(book.getId()).toUri();
+                    return ResponseEntity.created(location).build();
 
-                URI location = uriBuilder.path("/books/{id}").buildAndExpand(book.getId()).toUri();
-                return ResponseEntity.created(location).build();
+                } catch (ValidationException e) {
+                    return ResponseEntity.unprocessableEntity().body(e.getMessage());
+                }
 
-            } catch (ValidationException e) {
-                return ResponseEntity.unprocessableEntity().body(e.getMessage());
+            } else {
+                return ResponseEntity.status(CONFLICT).build();
             }
+        }, () -> RequestExecutor.unknownOutcome("Book " + book.getId() + " may still be added - check GET /books/"
+                + book.getId() + " before retrying"));
+    }
 
-        } else {
-            return ResponseEntity.status(CONFLICT).build();
-        }
+    /**
+     * Import wielu książek w jednym żądaniu.
+     *
+     * Żądanie:
+     * POST /books/bulk
+     *
+     * Ciało żądania zawiera tablicę książek w formacie JSON (application/json) lub książki zapisane w kolejnych liniach
+     * (application/x-ndjson). Dane są odczytywane strumieniowo, więc rozmiar importu nie jest ograniczony dostępną
+     * pamięcią.
+     *
+     * @param body strumień z ciałem żądania
+     *
+     * @return odpowiedź 200 OK zawierająca raport z importu (liczba zapisanych książek i lista odrzuconych wierszy)
+     * lub odpowiedź 400 Bad Request z tym samym raportem, jeśli dane wejściowe okazały się niepoprawne; w trybie
+     * ASYNC odpowiedź 500 Internal Server Error bez nagłówka Retry-After, jeśli czas obsługi żądania upłynął w trakcie
+     * importu
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public Object importBooks(InputStream body) throws Exception {
+        return execute(() -> {
+            MappingIterator<Book> books = objectMapper.readerFor(Book.class).readValues(body);
+            ImportReport report = bookImportService.importBooks(books);
+
+            return report.getError() == null ? ResponseEntity.ok(report) : ResponseEntity.badRequest().body(report);
+        }, () -> RequestExecutor.unknownOutcome("Import may still be in progress - check GET /books before retrying"));
     }
 
     /**
@@ -84,20 +249,48 @@ public class BooksController {
      * Żądanie:
      * GET /books/{id}
      *
+     * Odpowiedź zawiera nagłówki ETag i Last-Modified - jeśli książka nie zmieniła się od czasu wskazanego
+     * w nagłówku If-None-Match lub If-Modified-Since żądania, zwracana jest odpowiedź 304 Not Modified.
+     *
      * @param id identyfikator książki
+     * @param headers nagłówki żądania (nagłówki warunkowe)
      *
-     * @return odpowiedź 200 zawierająca dane książki lub odpowiedź 404, jeśli książka o podanym identyfikatorze nie
-     * istnieje w bazie danych
+     * @return odpowiedź 200 zawierająca dane książki, odpowiedź 304 lub odpowiedź 404, jeśli książka o podanym
+     * identyfikatorze nie istnieje w bazie danych
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Book> getBook(@PathVariable UUID id) {
-        //wyszukanie książki w bazie danych
-        Book book = booksService.find(id);
-
-        //W warstwie biznesowej brak książki o podanym id jest sygnalizowany wartością null. Jeśli książka nie została
-        //znaleziona zwracana jest odpowiedź 404 Not Found. W przeciwnym razie klient otrzymuje odpowiedź 200 OK
-        //zawierającą dane książki w domyślnym formacie JSON
-        return book != null ? ResponseEntity.ok(book) : ResponseEntity.notFound().build();
+    public Object getBook(@PathVariable UUID id, @RequestHeader HttpHeaders headers) throws Exception {
+        return execute(() -> {
+            String etag = catalogueVersion.etag(id);
+            long lastModified = catalogueVersion.lastModified(id);
+
+            //odpowiedź 304 Not Modified jest zwracana tylko dla istniejącej książki - książka niezmieniona od
+            //uruchomienia aplikacji (nieznana licznikowi zmian) jest najpierw wyszukiwana w bazie danych
+            Book book = null;
+            if (!catalogueVersion.contains(id)) {
+                book = booksService.find(id);
+                if (book == null) {
+                    return ResponseEntity.notFound().build();
+                }
+            }
+
+            ResponseEntity<Book> notModified = ConditionalResponses.notModified(headers, etag, lastModified);
+            if (notModified != null) {
+                return notModified;
+            }
+
+            //wyszukanie książki w bazie danych
+            if (book == null) {
+                book = booksService.find(id);
+            }
+
+            //W warstwie biznesowej brak książki o podanym id jest sygnalizowany wartością null. Jeśli książka nie
+            //została znaleziona zwracana jest odpowiedź 404 Not Found. W przeciwnym razie klient otrzymuje odpowiedź
+            //200 OK zawierającą dane książki w domyślnym formacie JSON
+            return book != null
+                    ? ConditionalResponses.ok(etag, lastModified).body(book)
+                    : ResponseEntity.notFound().build();
+        });
     }
 
     /**
@@ -110,16 +303,33 @@ public class BooksController {
      * @return
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Void> updateBook(@RequestBody Book book) {
-        if (booksService.find(book.getId()) != null) {
-            //aktualizacja danych jest możliwa o ile książka o podanym id istnieje w bazie danych
-            booksService.save(book);
-            return ResponseEntity.ok().build();
-
-        } else {
-            //nie odnaleziono książki o podanym id - odpowiedź 404 Not Found
-            return ResponseEntity.notFound().build();
-        }
+    public Object updateBook(@RequestBody Book book) throws Exception {
+        return execute(() -> {
+            if (booksService.find(book.getId()) != null) {
+                //aktualizacja danych jest możliwa o ile książka o podanym id istnieje w bazie danych
+                booksService.update(book);
+                return ResponseEntity.ok().build();
+
+            } else {
+                //nie odnaleziono książki o podanym id - odpowiedź 404 Not Found
+                return ResponseEntity.notFound().build();
+            }
+        });
+    }
+
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> busy() {
+        return RequestExecutor.busy();
     }
 
+    //wykonanie akcji w wątku serwera (tryb BLOCKING) lub w puli RequestExecutor (tryb ASYNC) - akcję można bezpiecznie
+    //ponowić, jeśli czas obsługi żądania upłynął
+    private Object execute(Callable<? extends ResponseEntity<?>> action) throws Exception {
+        return requestExecutor != null ? requestExecutor.submit(action) : action.call();
+    }
+
+    private Object execute(Callable<? extends ResponseEntity<?>> action,
+                           Callable<? extends ResponseEntity<?>> whenRunning) throws Exception {
+        return requestExecutor != null ? requestExecutor.submit(action, whenRunning) : action.call();
+    }
 }
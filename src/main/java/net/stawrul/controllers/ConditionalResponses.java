@@ -0,0 +1,71 @@
+package net.stawrul.controllers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * Pomocnicze metody do obsługi żądań warunkowych (nagłówki If-None-Match i If-Modified-Since).
+ * <p>
+ * Nagłówki warunkowe są sprawdzane przed pobraniem danych, a znaczniki są przekazywane w obiekcie ResponseEntity -
+ * także wtedy, gdy akcja kontrolera jest wykonywana w osobnym wątku (bookshop.web.execution-mode=ASYNC).
+ */
+final class ConditionalResponses {
+
+    private ConditionalResponses() {}
+
+    /**
+     * @param request nagłówki żądania
+     * @param etag znacznik aktualnej wersji zasobu (bez cudzysłowów)
+     * @param lastModified czas ostatniej zmiany zasobu w milisekundach
+     * @param <T> typ treści odpowiedzi
+     * @return odpowiedź 304 Not Modified, jeśli klient ma aktualną wersję zasobu, lub null
+     */
+    static <T> ResponseEntity<T> notModified(HttpHeaders request, String etag, long lastModified) {
+        List<String> ifNoneMatch = request.getIfNoneMatch();
+        boolean notModified;
+        if (!ifNoneMatch.isEmpty()) {
+            //przy żądaniach GET znaczniki słabe (W/) są porównywane tak jak silne
+            notModified = ifNoneMatch.stream()
+                    .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                    .anyMatch(tag -> tag.equals("*") || tag.equals(quote(etag)));
+        } else {
+            //nagłówek Last-Modified ma dokładność jednej sekundy
+            notModified = lastModified / 1000 * 1000 <= ifModifiedSince(request);
+        }
+
+        if (!notModified) {
+            return null;
+        }
+        return withTags(ResponseEntity.status(HttpStatus.NOT_MODIFIED), etag, lastModified).build();
+    }
+
+    /**
+     * @param etag znacznik aktualnej wersji zasobu (bez cudzysłowów)
+     * @param lastModified czas ostatniej zmiany zasobu w milisekundach
+     * @return odpowiedź 200 OK z nagłówkami ETag i Last-Modified
+     */
+    static ResponseEntity.BodyBuilder ok(String etag, long lastModified) {
+        return withTags(ResponseEntity.ok(), etag, lastModified);
+    }
+
+    private static ResponseEntity.BodyBuilder withTags(ResponseEntity.BodyBuilder response, String etag,
+                                                       long lastModified) {
+        return response.eTag(quote(etag)).lastModified(lastModified);
+    }
+
+    private static long ifModifiedSince(HttpHeaders request) {
+        try {
+            return request.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            //nieprawidłowa data jest pomijana
+            return -1;
+        }
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+}
@@ -0,0 +1,37 @@
+package net.stawrul.controllers;
+
+import net.stawrul.services.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+
+/**
+ * Pomocnicze metody do budowania odpowiedzi zawierających jedną stronę wyników.
+ */
+final class Pages {
+
+    private Pages() {}
+
+    /**
+     * @param page strona wyników
+     * @param uriBuilder adres zasobu, do którego zostaną dodane parametry następnej strony
+     * @param limit rozmiar strony przekazany przez klienta (może być null)
+     * @param <T> typ elementów strony
+     * @return odpowiedź 200 OK zawierająca elementy strony oraz - jeśli istnieje następna strona - nagłówek Link
+     */
+    static <T> ResponseEntity<List<T>> toResponse(Page<T> page, UriComponentsBuilder uriBuilder, Integer limit) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (page.getNext() != null) {
+            if (limit != null) {
+                uriBuilder.queryParam("limit", limit);
+            }
+            String next = uriBuilder.queryParam("after", page.getNext()).build().toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+
+        return response.body(page.getItems());
+    }
+}
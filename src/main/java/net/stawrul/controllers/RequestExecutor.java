@@ -0,0 +1,170 @@
+package net.stawrul.controllers;
+
+import net.stawrul.metrics.ServiceMetrics;
+import net.stawrul.metrics.SqlStatementCountFilter;
+import net.stawrul.metrics.SqlStatementCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wykonywanie akcji kontrolerów w trybie bookshop.web.execution-mode=ASYNC - w wątkach osobnej puli o stałym rozmiarze
+ * (bookshop.web.async.threads), a nie w wątku serwera HTTP.
+ * <p>
+ * Wątek serwera jest zwalniany zaraz po przyjęciu żądania, więc żądania czekające na odpowiedź bazy danych nie
+ * blokują puli wątków serwera (server.tomcat.max-threads). Liczba żądań wykonywanych i oczekujących na wolny wątek
+ * jest ograniczona (bookshop.web.async.max-requests) - kolejne żądania są odrzucane wyjątkiem TaskRejectedException,
+ * na który kontrolery odpowiadają 503 Service Unavailable.
+ * <p>
+ * Akcje są wykonywane jako WebAsyncTask - otwarty dla żądania EntityManager (spring.jpa.open-in-view) jest
+ * przekazywany do wątku puli, a po zakończeniu akcji odpowiedź jest zapisywana (z leniwym wczytywaniem kolekcji)
+ * ponownie w wątku serwera.
+ * <p>
+ * Akcja, która po upływie bookshop.web.async.timeout-ms nie została jeszcze rozpoczęta, nie jest już wykonywana,
+ * a klient otrzymuje odpowiedź 503 Service Unavailable z nagłówkiem Retry-After. Akcja rozpoczęta wcześniej jest
+ * wykonywana do końca (np. zamówienie może zostać zapisane), więc odpowiedź dla klienta określa kontroler - dla akcji,
+ * których nie można bezpiecznie ponowić, nie zawiera ona nagłówka Retry-After.
+ */
+@Component
+@ConditionalOnProperty(name = "bookshop.web.execution-mode", havingValue = "ASYNC")
+public class RequestExecutor {
+
+    private final ExecutorService threads;
+    private final ConcurrentTaskExecutor executor;
+    private final Semaphore permits;
+    private final long timeoutMs;
+
+    private ServiceMetrics metrics = ServiceMetrics.NONE;
+
+    public RequestExecutor(@Value("${bookshop.web.async.threads:16}") int threads,
+                           @Value("${bookshop.web.async.max-requests:1000}") int maxRequests,
+                           @Value("${bookshop.web.async.timeout-ms:30000}") long timeoutMs) {
+        this.threads = Executors.newFixedThreadPool(threads);
+        this.executor = new ConcurrentTaskExecutor(this.threads);
+        this.permits = new Semaphore(maxRequests);
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Autowired(required = false)
+    public void setServiceMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param action akcja kontrolera, którą można bezpiecznie ponowić
+     * @return zadanie wykonujące akcję w wątku puli (po upływie bookshop.web.async.timeout-ms klient otrzymuje
+     * odpowiedź 503 Service Unavailable z nagłówkiem Retry-After)
+     * @throws TaskRejectedException jeśli osiągnięto limit bookshop.web.async.max-requests
+     */
+    public WebAsyncTask<ResponseEntity<?>> submit(Callable<? extends ResponseEntity<?>> action) {
+        return submit(action, RequestExecutor::timedOut);
+    }
+
+    /**
+     * @param action akcja kontrolera
+     * @param whenRunning odpowiedź dla klienta, jeśli czas bookshop.web.async.timeout-ms upłynął w trakcie wykonywania
+     *                    akcji (akcja jest wykonywana do końca)
+     * @return zadanie wykonujące akcję w wątku puli
+     * @throws TaskRejectedException jeśli osiągnięto limit bookshop.web.async.max-requests
+     */
+    public WebAsyncTask<ResponseEntity<?>> submit(Callable<? extends ResponseEntity<?>> action,
+                                                  Callable<? extends ResponseEntity<?>> whenRunning) {
+        if (!permits.tryAcquire()) {
+            metrics.increment("web.async.rejected");
+            throw new TaskRejectedException("Too many pending requests");
+        }
+
+        //żądanie jest dostępne w wątku puli (np. dla ServletUriComponentsBuilder.fromCurrentRequest), a zapytania SQL
+        //są zliczane w wątku puli zamiast w SqlStatementCountFilter
+        RequestAttributes request = RequestContextHolder.currentRequestAttributes();
+        request.setAttribute(SqlStatementCountFilter.COUNTED_ELSEWHERE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        long submitted = System.nanoTime();
+
+        //akcję rozpoczyna wątek puli albo anuluje upływ czasu żądania - w zależności od tego, co nastąpi pierwsze
+        AtomicBoolean started = new AtomicBoolean();
+
+        WebAsyncTask<ResponseEntity<?>> task = new WebAsyncTask<>(timeoutMs, executor, () -> {
+            try {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                metrics.record("web.async.wait", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted));
+                RequestContextHolder.setRequestAttributes(request);
+                SqlStatementCounter.reset();
+                try {
+                    return action.call();
+                } finally {
+                    metrics.record("http.sql.statements", SqlStatementCounter.get());
+                    RequestContextHolder.resetRequestAttributes();
+                }
+            } finally {
+                permits.release();
+            }
+        });
+        task.onTimeout(() -> {
+            if (started.compareAndSet(false, true)) {
+                metrics.increment("web.async.cancelled");
+                return timedOut();
+            }
+            metrics.increment("web.async.timeout");
+            return whenRunning.call();
+        });
+        return task;
+    }
+
+    /**
+     * @return liczba żądań, które mogą jeszcze zostać przyjęte
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    @PreDestroy
+    public void stop() {
+        threads.shutdown();
+    }
+
+    /**
+     * @return odpowiedź dla żądania odrzuconego z powodu osiągnięcia limitu bookshop.web.async.max-requests
+     */
+    static ResponseEntity<String> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Too many pending requests");
+    }
+
+    /**
+     * @return odpowiedź dla żądania, którego czas obsługi upłynął - żądanie można bezpiecznie ponowić
+     */
+    static ResponseEntity<?> timedOut() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Request timed out");
+    }
+
+    /**
+     * @param message opis dla klienta
+     * @return odpowiedź dla żądania, którego czas obsługi upłynął w trakcie wykonywania akcji - akcja może jeszcze
+     * zakończyć się powodzeniem, więc odpowiedź nie zawiera nagłówka Retry-After
+     */
+    static ResponseEntity<String> unknownOutcome(String message) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(message);
+    }
+}
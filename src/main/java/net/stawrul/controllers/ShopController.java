@@ -1,42 +1,161 @@
 package net.stawrul.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.stawrul.model.Order;
+import net.stawrul.services.OrderIngestService;
+import net.stawrul.services.OrderRetryPolicy;
+import net.stawrul.services.OrderStatus;
 import net.stawrul.services.OrdersService;
+import net.stawrul.services.Page;
+import net.stawrul.services.exceptions.OrderValidationException;
 import net.stawrul.services.exceptions.ValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import static java.util.Objects.isNull;
 
 /**
  * Kontroler obejmujący akcje na zamówieniach.
+ *
+ * Akcje są wykonywane w wątku serwera HTTP, który obsłużył żądanie (bookshop.web.execution-mode=BLOCKING), a w trybie
+ * ASYNC - w wątkach puli RequestExecutor. W trybie ASYNC każda akcja może dodatkowo zwrócić odpowiedź 503 Service
+ * Unavailable, jeśli osiągnięto limit oczekujących żądań (bookshop.web.async.max-requests) lub upłynął czas obsługi
+ * żądania (bookshop.web.async.timeout-ms).
  */
 @RestController
 public class ShopController {
 
+    //Typ MIME dla formatu NDJSON (ang. newline-delimited JSON)
+    static final String NDJSON = "application/x-ndjson";
+
+    //Nagłówek z kluczem idempotencji - ponowienie żądania z tym samym kluczem zwraca wcześniej złożone zamówienie
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    //Liczba zamówień na stronie, jeśli klient podał tylko kursor
+    static final int DEFAULT_PAGE_SIZE = 100;
+
     //Komponent realizujący logikę biznesową operacji na zamówieniach
     final OrdersService ordersService;
 
-    //Instancja klasy OrdersService zostanie dostarczona przez framework Spring
+    //Ponawianie składania zamówień zakończonego konfliktem z równoległym zamówieniem
+    final OrderRetryPolicy orderRetryPolicy;
+
+    //Obiekt zamieniający zamówienia na format JSON (ten sam, którego używa framework Spring)
+    final ObjectMapper objectMapper;
+
+    //Komponent asynchronicznego przyjmowania zamówień - null, jeśli bookshop.orders.ingest.enabled=false
+    OrderIngestService orderIngestService;
+
+    //Maksymalny czas eksportu zamówień w milisekundach
+    long exportTimeoutMs = 600000;
+
+    //Pula wątków wykonujących akcje kontrolera - null, jeśli bookshop.web.execution-mode=BLOCKING
+    RequestExecutor requestExecutor;
+
+    //Instancje klas OrdersService, OrderRetryPolicy i ObjectMapper zostaną dostarczone przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
-    public ShopController(OrdersService ordersService) {
+    public ShopController(OrdersService ordersService, OrderRetryPolicy orderRetryPolicy, ObjectMapper objectMapper) {
         this.ordersService = ordersService;
+        this.orderRetryPolicy = orderRetryPolicy;
+        this.objectMapper = objectMapper;
+    }
+
+    @Autowired(required = false)
+    public void setOrderIngestService(OrderIngestService orderIngestService) {
+        this.orderIngestService = orderIngestService;
     }
 
+    @Value("${bookshop.orders.export.timeout-ms:600000}")
+    public void setExportTimeoutMs(long exportTimeoutMs) {
+        this.exportTimeoutMs = exportTimeoutMs;
+    }
+
+    @Autowired(required = false)
+    public void setRequestExecutor(RequestExecutor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+    }
 
     /**
-     * Pobieranie listy wszystkich zamówień.
+     * Pobieranie listy zamówień.
      *
-     * @return lista zamówień
+     * Bez parametrów zwracana jest lista wszystkich zamówień. Jeśli podano parametr limit, zwracana jest jedna strona
+     * listy uporządkowanej według daty złożenia, a adres następnej strony jest przekazywany w nagłówku Link
+     * (rel="next").
+     *
+     * @param limit liczba zamówień na stronie
+     * @param after kursor wskazujący na koniec poprzedniej strony
+     * @param uriBuilder pomocniczy obiekt do budowania adresu następnej strony
+     * @return lista zamówień lub odpowiedź 400 Bad Request w przypadku nieprawidłowego limitu lub kursora
      */
     @GetMapping("/orders")
-    public List<Order> listOrders() {
-        return ordersService.findAll();
+    public Object listOrders(@RequestParam(required = false) Integer limit,
+                             @RequestParam(required = false) String after,
+                             UriComponentsBuilder uriBuilder) throws Exception {
+        return execute(() -> {
+            if (limit == null && after == null) {
+                return ResponseEntity.ok(ordersService.findAll());
+            }
+
+            try {
+                Page<Order> page = ordersService.findPage(after, limit != null ? limit : DEFAULT_PAGE_SIZE);
+                return Pages.toResponse(page, uriBuilder.path("/orders"), limit);
+
+            } catch (ValidationException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Eksport pełnej historii zamówień w formacie NDJSON (jedno zamówienie w formacie JSON w każdej linii).
+     *
+     * Odpowiedź jest zapisywana strumieniowo w trakcie odczytu zamówień z bazy danych, więc jej rozmiar nie jest
+     * ograniczony dostępną pamięcią. Zapis odbywa się w wątku puli Spring MVC (wątek serwera jest zwalniany), a czas
+     * eksportu jest ograniczony tylko dla tego żądania (bookshop.orders.export.timeout-ms) - również w trybie ASYNC
+     * eksport nie zajmuje wątku puli RequestExecutor.
+     *
+     * @param response odpowiedź, do której zamówienia są zapisywane bezpośrednio
+     * @return zadanie zapisujące strumień zamówień
+     */
+    @GetMapping(value = "/orders/export", produces = NDJSON)
+    public WebAsyncTask<Void> exportOrders(HttpServletResponse response) {
+        response.setContentType(NDJSON);
+        return new WebAsyncTask<>(exportTimeoutMs, () -> {
+            ServletOutputStream out = response.getOutputStream();
+            try {
+                ordersService.exportAll(order -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(order));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+            return null;
+        });
     }
 
     /**
@@ -47,29 +166,154 @@ public class ShopController {
      * danych
      */
     @GetMapping("/orders/{id}")
-    public ResponseEntity<Order> getOrder(@PathVariable UUID id) {
-        Order order = ordersService.find(id);
-        return isNull(order) ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+    public Object getOrder(@PathVariable UUID id) throws Exception {
+        return execute(() -> {
+            Order order = ordersService.findWithLines(id);
+            return isNull(order) ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+        });
+    }
+
+    /**
+     * Pobieranie stanu zamówienia złożonego asynchronicznie (bookshop.orders.ingest.enabled=true).
+     *
+     * @param id identyfikator zamówienia
+     * @return odpowiedź 200 OK zawierająca stan zamówienia lub odpowiedź 404 Not Found, jeśli zamówienie jest nieznane
+     */
+    @GetMapping("/orders/{id}/status")
+    public Object getOrderStatus(@PathVariable UUID id) throws Exception {
+        return execute(() -> {
+            OrderStatus status = isNull(orderIngestService) ? null : orderIngestService.status(id);
+            return isNull(status) ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+        });
     }
 
     /**
      * Składanie zamówienia.
      *
+     * Przy włączonym asynchronicznym przyjmowaniu zamówień (bookshop.orders.ingest.enabled=true) zamówienie jest tylko
+     * dodawane do kolejki, a wynik jego zapisu można sprawdzić pod adresem z nagłówka Location.
+     *
+     * Jeśli żądanie zawiera nagłówek Idempotency-Key, a zamówienie z tym kluczem zostało już złożone, zwracany jest
+     * adres istniejącego zamówienia - bez ponownej walidacji i bez zmiany stanów magazynowych. Dzięki temu klient może
+     * bezpiecznie ponowić żądanie, na które nie otrzymał odpowiedzi. W trybie asynchronicznym klucz jest rezerwowany
+     * już przy dodaniu zamówienia do kolejki, a ponowione żądanie otrzymuje ten sam adres stanu zamówienia.
+     *
      * @param order zamówienie
+     * @param idempotencyKey klucz idempotencji (opcjonalny)
      * @param uriBuilder pomocniczy obiekt do budowania adresu wskazującego na nowo dodane zamówienie,
      *                   zostanie wstrzyknięty przez framework Spring
-     * @return odpowiedź 201 Created zawierająca nagłówek Location z adresem nowego zamówienia lub odpowiedź 422
-     * Unprocessable Entity, jeśli zamówienie zostało odrzucone (np. z powodu braku produktów)
+     * @return odpowiedź 201 Created zawierająca nagłówek Location z adresem nowego (lub wcześniej złożonego)
+     * zamówienia, odpowiedź 400 Bad Request w przypadku nieprawidłowego klucza idempotencji lub odpowiedź 422
+     * Unprocessable Entity, jeśli zamówienie zostało odrzucone (np. z powodu braku produktów) - przy
+     * bookshop.orders.validation.mode=COLLECT_ALL w formacie JSON, z listą wszystkich błędów; odpowiedź 503 Service
+     * Unavailable, jeśli zamówienia nie udało się złożyć z powodu konfliktów z równoległymi zamówieniami; w trybie
+     * asynchronicznym odpowiedź 202 Accepted z adresem stanu zamówienia lub 503 Service Unavailable, jeśli kolejka jest
+     * pełna. W trybie ASYNC, jeśli czas obsługi żądania upłynął w trakcie składania zamówienia, zamówienie może jeszcze
+     * zostać zapisane - żądanie z kluczem idempotencji otrzymuje wtedy odpowiedź 503 Service Unavailable (ponowienie
+     * z tym samym kluczem nie utworzy drugiego zamówienia), a żądanie bez klucza odpowiedź 500 Internal Server Error
+     * bez nagłówka Retry-After, z adresem zamówienia do sprawdzenia przed ponowieniem
      */
     @PostMapping(value = "/orders")
-    public ResponseEntity<String> addOrder(@RequestBody Order order, UriComponentsBuilder uriBuilder) {
+    public Object addOrder(@RequestBody Order order,
+                           @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                           UriComponentsBuilder uriBuilder) throws Exception {
+        return execute(() -> placeOrder(order, idempotencyKey, uriBuilder), () -> isNull(idempotencyKey)
+                ? RequestExecutor.unknownOutcome("Order " + order.getId() + " may still be placed - check GET /orders/"
+                        + order.getId() + " before retrying")
+                : RequestExecutor.timedOut());
+    }
+
+    private ResponseEntity<?> placeOrder(Order order, String idempotencyKey, UriComponentsBuilder uriBuilder) {
+        if (!isNull(idempotencyKey)) {
+            if (idempotencyKey.isEmpty() || idempotencyKey.length() > Order.IDEMPOTENCY_KEY_LENGTH) {
+                return ResponseEntity.badRequest().body("Invalid " + IDEMPOTENCY_KEY + " header");
+            }
+
+            UUID existing = ordersService.findIdByIdempotencyKey(idempotencyKey);
+            if (!isNull(existing)) {
+                return submitted(existing, uriBuilder);
+            }
+            order.setIdempotencyKey(idempotencyKey);
+        }
+
+        if (!isNull(orderIngestService)) {
+            if (!isNull(idempotencyKey)) {
+                //równoległe żądanie z tym samym kluczem mogło dodać zamówienie do kolejki po wyszukaniu klucza
+                UUID existing = ordersService.reserveIdempotencyKey(idempotencyKey, order.getId());
+                if (!isNull(existing)) {
+                    return submitted(existing, uriBuilder);
+                }
+            }
+            if (!orderIngestService.submit(order)) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body("Order queue is full");
+            }
+            return accepted(order.getId(), uriBuilder);
+        }
+
         try {
-            ordersService.placeOrder(order);
-            URI location = uriBuilder.path("/orders/{id}").buildAndExpand(order.getId()).toUri();
-            return ResponseEntity.created(location).build();
+            orderRetryPolicy.run(() -> ordersService.placeOrder(order));
+            return created(order.getId(), uriBuilder);
+
+        } catch (OrderValidationException e) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("message", e.getMessage());
+            report.put("violations", e.getViolations());
+            return ResponseEntity.unprocessableEntity().body(report);
 
         } catch (ValidationException e) {
             return ResponseEntity.unprocessableEntity().body(e.getMessage());
+
+        } catch (ConcurrencyFailureException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("Order conflicts with concurrent orders");
+
+        } catch (DataIntegrityViolationException e) {
+            //równoległe żądanie z tym samym kluczem idempotencji zapisało zamówienie wcześniej - zapis tego zamówienia
+            //naruszył ograniczenie unikalności klucza. Pozostałe błędy (np. niedostępność bazy danych) nie są
+            //przechwytywane, aby nie zostały ukryte przez błąd kolejnego zapytania
+            UUID existing = isNull(idempotencyKey) ? null : ordersService.findIdByIdempotencyKey(idempotencyKey);
+            if (isNull(existing)) {
+                throw e;
+            }
+            return created(existing, uriBuilder);
         }
     }
+
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> busy() {
+        return RequestExecutor.busy();
+    }
+
+    //wykonanie akcji w wątku serwera (tryb BLOCKING) lub w puli RequestExecutor (tryb ASYNC) - akcję można bezpiecznie
+    //ponowić, jeśli czas obsługi żądania upłynął
+    private Object execute(Callable<? extends ResponseEntity<?>> action) throws Exception {
+        return requestExecutor != null ? requestExecutor.submit(action) : action.call();
+    }
+
+    private Object execute(Callable<? extends ResponseEntity<?>> action,
+                           Callable<? extends ResponseEntity<?>> whenRunning) throws Exception {
+        return requestExecutor != null ? requestExecutor.submit(action, whenRunning) : action.call();
+    }
+
+    //zamówienie złożone wcześniej z tym samym kluczem idempotencji - jeśli trafiło do kolejki zamówień, zwracany jest
+    //adres jego stanu (tak jak w odpowiedzi na pierwsze żądanie)
+    private ResponseEntity<?> submitted(UUID id, UriComponentsBuilder uriBuilder) {
+        if (!isNull(orderIngestService) && !isNull(orderIngestService.status(id))) {
+            return accepted(id, uriBuilder);
+        }
+        return created(id, uriBuilder);
+    }
+
+    private static ResponseEntity<?> accepted(UUID id, UriComponentsBuilder uriBuilder) {
+        URI status = uriBuilder.path("/orders/{id}/status").buildAndExpand(id).toUri();
+        return ResponseEntity.accepted().location(status).build();
+    }
+
+    private static ResponseEntity<String> created(UUID id, UriComponentsBuilder uriBuilder) {
+        URI location = uriBuilder.path("/orders/{id}").buildAndExpand(id).toUri();
+        return ResponseEntity.created(location).build();
+    }
 }
@@ -0,0 +1,73 @@
+package net.stawrul.controllers;
+
+import net.stawrul.metrics.SecondLevelCacheMetrics;
+import net.stawrul.services.SalesSummary;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Kontroler udostępniający statystyki działania sklepu.
+ */
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    //Maksymalna liczba książek i dni w zestawieniu sprzedaży
+    static final int MAX_SALES_ROWS = 1000;
+
+    final SalesSummary salesSummary;
+
+    final SecondLevelCacheMetrics secondLevelCache;
+
+    public StatsController(SalesSummary salesSummary, SecondLevelCacheMetrics secondLevelCache) {
+        this.salesSummary = salesSummary;
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    /**
+     * Statystyki regionów pamięci podręcznej drugiego poziomu (m.in. książek - region net.stawrul.model.Book).
+     *
+     * Żądanie:
+     * GET /stats/cache
+     *
+     * @return liczba obiektów w każdym z regionów wraz z licznikami trafień, chybień i usunięć wpisów (regions)
+     */
+    @GetMapping("/cache")
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("regions", secondLevelCache.regions());
+        return result;
+    }
+
+    /**
+     * Zestawienie sprzedaży - odczytywane z tabel aktualizowanych przyrostowo (SalesSummary), bez przeglądania
+     * zamówień.
+     *
+     * Żądanie:
+     * GET /stats/sales?books=10&days=30
+     *
+     * @param books liczba książek o największym przychodzie
+     * @param days liczba ostatnich dni
+     * @return sprzedaż książek i sprzedaż w poszczególnych dniach lub odpowiedź 400 Bad Request w przypadku
+     * nieprawidłowej liczby książek lub dni
+     */
+    @GetMapping("/sales")
+    public ResponseEntity<?> salesStats(@RequestParam(defaultValue = "10") int books,
+                                        @RequestParam(defaultValue = "30") int days) {
+        if (books < 0 || books > MAX_SALES_ROWS || days < 0 || days > MAX_SALES_ROWS) {
+            return ResponseEntity.badRequest().body("Limit must be between 0 and " + MAX_SALES_ROWS);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("books", books > 0 ? salesSummary.topBooks(books) : Collections.emptyList());
+        result.put("days", days > 0 ? salesSummary.recentDays(days) : Collections.emptyList());
+        return ResponseEntity.ok(result);
+    }
+}
@@ -0,0 +1,42 @@
+package net.stawrul.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rejestracja metryk puli połączeń HikariCP (profil perf) w rejestrze Dropwizard - są one dostępne w punkcie
+ * końcowym /metrics, np. &lt;pool-name&gt;.pool.Wait (czas oczekiwania na połączenie z puli) oraz
+ * &lt;pool-name&gt;.pool.PendingConnections (liczba wątków czekających na połączenie).
+ * <p>
+ * Rejestr musi zostać przekazany do puli przed jej uruchomieniem, czyli przed pobraniem pierwszego połączenia.
+ */
+@Component
+public class DataSourcePoolMetrics implements BeanPostProcessor {
+
+    //rejestr jest pobierany dopiero przy tworzeniu puli - postprocesory są tworzone przed pozostałymi komponentami
+    private final ObjectProvider<MetricRegistry> metricRegistry;
+
+    public DataSourcePoolMetrics(ObjectProvider<MetricRegistry> metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource) {
+            HikariDataSource dataSource = (HikariDataSource) bean;
+            MetricRegistry registry = metricRegistry.getIfAvailable();
+            if (registry != null && dataSource.getMetricRegistry() == null) {
+                dataSource.setMetricRegistry(registry);
+            }
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean;
+    }
+}
@@ -0,0 +1,62 @@
+package net.stawrul.metrics;
+
+import net.sf.ehcache.Statistics;
+import org.hibernate.cache.ehcache.internal.regions.EhcacheDataRegion;
+import org.hibernate.cache.spi.Region;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statystyki regionów pamięci podręcznej drugiego poziomu (Hibernate, Ehcache) - udostępniane w punkcie końcowym
+ * /metrics (np. cache.regions.net.stawrul.model.Book.hits) oraz w odpowiedzi GET /stats/cache.
+ */
+@Component
+public class SecondLevelCacheMetrics implements PublicMetrics {
+
+    private final EntityManagerFactory emf;
+
+    public SecondLevelCacheMetrics(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * @return liczba obiektów w pamięci, liczniki trafień, chybień i usunięć wpisów dla każdego regionu
+     */
+    public Map<String, Map<String, Long>> regions() {
+        //getAllSecondLevelCacheRegions zwraca surowy typ Map - kluczem jest nazwa regionu, a wartością Region
+        Map<?, ?> regions = emf.unwrap(SessionFactoryImplementor.class).getAllSecondLevelCacheRegions();
+
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        regions.forEach((name, entry) -> {
+            Region region = (Region) entry;
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put("size", region.getElementCountInMemory());
+            if (region instanceof EhcacheDataRegion) {
+                Statistics stats = ((EhcacheDataRegion) region).getEhcache().getStatistics();
+                values.put("hits", stats.getCacheHits());
+                values.put("misses", stats.getCacheMisses());
+                values.put("evictions", stats.getEvictionCount());
+            }
+            result.put(String.valueOf(name), values);
+        });
+        return result;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        regions().forEach((name, values) ->
+                values.forEach((key, value) -> metrics.add(new Metric<>("cache.regions." + name + "." + key, value))));
+        return metrics;
+    }
+}
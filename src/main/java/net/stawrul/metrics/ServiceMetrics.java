@@ -0,0 +1,101 @@
+package net.stawrul.metrics;
+
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Rejestrowanie metryk działania serwisów biznesowych.
+ * <p>
+ * Metryki są przechowywane w rejestrze Dropwizard Metrics (prefiksy nazw nadawane przez Spring Boot: "timer." -
+ * czas wykonania z percentylami, "histogram." - rozkład wartości, "meter." - liczba i częstotliwość zdarzeń)
+ * i udostępniane przez punkt końcowy /metrics modułu Actuator.
+ */
+@Component
+public class ServiceMetrics {
+
+    /**
+     * Instancja niezapisująca żadnych metryk - używana, gdy serwis został utworzony poza kontenerem Spring.
+     */
+    public static final ServiceMetrics NONE = new ServiceMetrics(null, null);
+
+    private final CounterService counterService;
+    private final GaugeService gaugeService;
+
+    public ServiceMetrics(CounterService counterService, GaugeService gaugeService) {
+        this.counterService = counterService;
+        this.gaugeService = gaugeService;
+    }
+
+    /**
+     * Wykonanie operacji z pomiarem czasu.
+     *
+     * @param name nazwa metryki (bez prefiksu "timer.")
+     * @param action operacja
+     * @param <T> typ wyniku operacji
+     * @return wynik operacji
+     */
+    public <T> T time(String name, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            if (gaugeService != null) {
+                gaugeService.submit("timer." + name, (System.nanoTime() - start) / 1_000_000.0);
+            }
+        }
+    }
+
+    /**
+     * Wykonanie operacji z pomiarem czasu.
+     *
+     * @param name nazwa metryki (bez prefiksu "timer.")
+     * @param action operacja
+     */
+    public void time(String name, Runnable action) {
+        time(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Zarejestrowanie wartości w histogramie.
+     *
+     * @param name nazwa metryki (bez prefiksu "histogram.")
+     * @param value wartość
+     */
+    public void record(String name, double value) {
+        if (gaugeService != null) {
+            gaugeService.submit("histogram." + name, value);
+        }
+    }
+
+    /**
+     * Zliczenie zdarzenia.
+     *
+     * @param name nazwa metryki (bez prefiksu "meter.")
+     */
+    public void increment(String name) {
+        if (counterService != null) {
+            counterService.increment("meter." + name);
+        }
+    }
+
+    /**
+     * Zamiana komunikatu (np. wyjątku ValidationException) na fragment nazwy metryki, np. "Book out of stock" na
+     * "book-out-of-stock".
+     *
+     * @param message komunikat
+     * @return fragment nazwy metryki
+     */
+    public static String label(String message) {
+        if (message == null) {
+            return "unknown";
+        }
+        return message.trim().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+    }
+}
@@ -0,0 +1,42 @@
+package net.stawrul.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Filtr rejestrujący liczbę zapytań SQL wykonanych podczas obsługi każdego żądania HTTP (histogram
+ * histogram.http.sql.statements).
+ * <p>
+ * Żądania obsługiwane w osobnym wątku (bookshop.web.execution-mode=ASYNC) są oznaczane atrybutem COUNTED_ELSEWHERE -
+ * liczbę ich zapytań rejestruje wątek wykonujący akcję kontrolera.
+ */
+@Component
+public class SqlStatementCountFilter extends OncePerRequestFilter {
+
+    public static final String COUNTED_ELSEWHERE = SqlStatementCountFilter.class.getName() + ".COUNTED_ELSEWHERE";
+
+    private final ServiceMetrics metrics;
+
+    public SqlStatementCountFilter(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlStatementCounter.reset();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.getAttribute(COUNTED_ELSEWHERE) == null) {
+                metrics.record("http.sql.statements", SqlStatementCounter.get());
+            }
+        }
+    }
+}
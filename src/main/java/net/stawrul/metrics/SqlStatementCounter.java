@@ -0,0 +1,31 @@
+package net.stawrul.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Licznik zapytań SQL przygotowywanych przez Hibernate w bieżącym wątku.
+ * <p>
+ * Klasa jest rejestrowana w Hibernate właściwością hibernate.session_factory.statement_inspector, a stan licznika
+ * jest odczytywany i zerowany dla każdego żądania HTTP przez SqlStatementCountFilter.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * @return liczba zapytań przygotowanych w bieżącym wątku od ostatniego wywołania metody reset
+     */
+    public static int get() {
+        return COUNT.get()[0];
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+}
@@ -9,29 +9,75 @@ import lombok.Setter;
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import java.util.Locale;
 import java.util.UUID;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import net.stawrul.utils.Oprawa;
+import net.stawrul.utils.Uuids;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.beans.factory.annotation.Required;
 
 /**
  * Klasa encyjna reprezentująca towar w sklepie (książkę).
+ * <p>
+ * Książki są przechowywane w pamięci podręcznej drugiego poziomu (region net.stawrul.model.Book). Strategia
+ * READ_WRITE aktualizuje wpis po zatwierdzeniu transakcji zmieniającej książkę. Zapytania SQL zmniejszające stany
+ * magazynowe (Book.RESERVE, Book.WITHDRAW) nie usuwają regionu - po zatwierdzeniu transakcji usuwane są tylko
+ * zmienione książki (StockUpdates). Równoległe zmiany tej samej książki są wykrywane za pomocą pola version
+ * (blokowanie optymistyczne).
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(indexes = {
+        @Index(name = "book_title_key_idx", columnList = "title_key"),
+        @Index(name = "book_oprawa_idx", columnList = "oprawa"),
+        @Index(name = "book_cost_idx", columnList = "cost"),
+        @Index(name = "book_date_idx", columnList = "date")
+})
 @EqualsAndHashCode(of = "id")
 @NamedQueries(value = {
-        @NamedQuery(name = Book.FIND_ALL, query = "SELECT b FROM Book b")
+        @NamedQuery(name = Book.FIND_ALL, query = "SELECT b FROM Book b",
+                hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true")),
+        @NamedQuery(name = Book.FIND_FIRST_PAGE, query = "SELECT b FROM Book b ORDER BY b.id"),
+        @NamedQuery(name = Book.FIND_PAGE, query = "SELECT b FROM Book b WHERE b.id > :after ORDER BY b.id"),
+        @NamedQuery(name = Book.FIND_BY_IDS, query = "SELECT b FROM Book b WHERE b.id IN :ids"),
+        @NamedQuery(name = Book.FIND_IDS, query = "SELECT b.id FROM Book b WHERE b.id IN :ids"),
+        @NamedQuery(name = Book.FIND_TITLES, query = "SELECT b.id, b.title FROM Book b")
+})
+@NamedNativeQueries(value = {
+        @NamedNativeQuery(name = Book.RESERVE, query = "UPDATE book SET amount = amount - :n, version = version + 1 "
+                + "WHERE id = :id AND amount >= :n"),
+        @NamedNativeQuery(name = Book.WITHDRAW, query = "UPDATE book SET amount = amount - :n, version = version + 1 "
+                + "WHERE id = :id")
 })
 public class Book {
     public static final String FIND_ALL = "Book.FIND_ALL";
+    public static final String FIND_FIRST_PAGE = "Book.FIND_FIRST_PAGE";
+    public static final String FIND_PAGE = "Book.FIND_PAGE";
+    public static final String FIND_BY_IDS = "Book.FIND_BY_IDS";
+    public static final String FIND_IDS = "Book.FIND_IDS";
+    public static final String RESERVE = "Book.RESERVE";
+    public static final String WITHDRAW = "Book.WITHDRAW";
+    public static final String FIND_TITLES = "Book.FIND_TITLES";
 
     @Getter
     @Id
-    UUID id = UUID.randomUUID();
+    @Column(length = Uuids.LENGTH)
+    UUID id = Uuids.timeOrdered();
 
     @Getter
     @Setter
     String title;
 
+    //Tytuł zapisany małymi literami - wyszukiwanie po początku tytułu (GET /books/search) bez rozróżniania wielkości
+    //liter korzysta z indeksu na tej kolumnie
+    @JsonIgnore
+    @Column(name = "title_key")
+    String titleKey;
+
     @Getter
     @Setter
     Integer amount;
@@ -49,9 +95,35 @@ public class Book {
     @Setter
     Oprawa oprawa;
 
+    //Wersja zwiększana przy każdej zmianie książki (również przez zapytania Book.RESERVE i Book.WITHDRAW) - zapis
+    //zmiany wczytanej wcześniej wersji kończy się wyjątkiem OptimisticLockException zamiast utraty równoległej
+    //aktualizacji
+    @JsonIgnore
+    @Version
+    @Getter
+    @Setter
+    Long version;
+
     public Book() {}
 
     public Book(UUID uid) {
         id = uid;
     }
+
+    /**
+     * Ustawienie pola titleKey na podstawie tytułu przy każdym zapisie książki do bazy danych.
+     */
+    @PrePersist
+    @PreUpdate
+    public void updateTitleKey() {
+        titleKey = titleKey(title);
+    }
+
+    /**
+     * @param title tytuł książki lub jego fragment
+     * @return postać tytułu używana przy wyszukiwaniu (małe litery) lub null
+     */
+    public static String titleKey(String title) {
+        return title != null ? title.toLowerCase(Locale.ROOT) : null;
+    }
 }
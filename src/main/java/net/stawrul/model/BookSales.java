@@ -0,0 +1,47 @@
+package net.stawrul.model;
+
+import lombok.Getter;
+import net.stawrul.utils.Uuids;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * Klasa encyjna reprezentująca sumaryczną sprzedaż książki (liczba sprzedanych sztuk i przychód), aktualizowaną
+ * przyrostowo po złożeniu każdego zamówienia.
+ */
+@Entity
+@Table(name = "book_sales")
+@NamedQueries(value = {
+        @NamedQuery(name = BookSales.ADD, query = "UPDATE BookSales s SET s.copies = s.copies + :copies, "
+                + "s.revenue = s.revenue + :revenue WHERE s.bookId = :bookId"),
+        @NamedQuery(name = BookSales.FIND_TOP, query = "SELECT s FROM BookSales s ORDER BY s.revenue DESC, s.bookId")
+})
+public class BookSales {
+    public static final String ADD = "BookSales.ADD";
+    public static final String FIND_TOP = "BookSales.FIND_TOP";
+
+    @Getter
+    @Id
+    @Column(length = Uuids.LENGTH)
+    UUID bookId;
+
+    @Getter
+    long copies;
+
+    @Getter
+    long revenue;
+
+    public BookSales() {}
+
+    public BookSales(UUID bookId, long copies, long revenue) {
+        this.bookId = bookId;
+        this.copies = copies;
+        this.revenue = revenue;
+    }
+}
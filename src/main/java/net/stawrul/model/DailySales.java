@@ -0,0 +1,49 @@
+package net.stawrul.model;
+
+import lombok.Getter;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import java.sql.Date;
+
+/**
+ * Klasa encyjna reprezentująca sumaryczną sprzedaż jednego dnia (liczba zamówień, sprzedanych sztuk i przychód),
+ * aktualizowaną przyrostowo po złożeniu każdego zamówienia.
+ */
+@Entity
+@Table(name = "daily_sales")
+@NamedQueries(value = {
+        @NamedQuery(name = DailySales.ADD, query = "UPDATE DailySales s SET s.orders = s.orders + :orders, "
+                + "s.copies = s.copies + :copies, s.revenue = s.revenue + :revenue WHERE s.day = :day"),
+        @NamedQuery(name = DailySales.FIND_RECENT, query = "SELECT s FROM DailySales s ORDER BY s.day DESC")
+})
+public class DailySales {
+    public static final String ADD = "DailySales.ADD";
+    public static final String FIND_RECENT = "DailySales.FIND_RECENT";
+
+    //dzień w strefie czasowej serwera (java.sql.Date - w formacie JSON jako rrrr-mm-dd)
+    @Getter
+    @Id
+    Date day;
+
+    @Getter
+    long orders;
+
+    @Getter
+    long copies;
+
+    @Getter
+    long revenue;
+
+    public DailySales() {}
+
+    public DailySales(Date day, long orders, long copies, long revenue) {
+        this.day = day;
+        this.orders = orders;
+        this.copies = copies;
+        this.revenue = revenue;
+    }
+}
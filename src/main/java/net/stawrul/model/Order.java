@@ -1,7 +1,12 @@
 package net.stawrul.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.Setter;
+import net.stawrul.utils.Uuids;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.persistence.*;
@@ -12,29 +17,75 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
-import static javax.persistence.CascadeType.MERGE;
 import static javax.persistence.TemporalType.TIMESTAMP;
 
 /**
  * Klasa encyjna reprezentująca zamówienie w sklepie.
  */
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "orders_creation_date_idx", columnList = "creationDate, id"),
+        @Index(name = "orders_summarized_idx", columnList = "summarized")})
+@NamedQueries(value = {
+        @NamedQuery(name = Order.FIND_UNSUMMARIZED, query = "SELECT o.id FROM Order o WHERE o.summarized = false "
+                + "ORDER BY o.id"),
+        @NamedQuery(name = Order.MARK_SUMMARIZED, query = "UPDATE Order o SET o.summarized = true "
+                + "WHERE o.id IN :ids AND o.summarized = false"),
+        @NamedQuery(name = Order.FIND_LINES, query = "SELECT o.id, o.creationDate, l.bookId, l.quantity, l.unitCost "
+                + "FROM Order o JOIN o.lines l WHERE o.id IN :ids")
+})
 @EqualsAndHashCode(of = "id")
 public class Order {
+    public static final String FIND_UNSUMMARIZED = "Order.FIND_UNSUMMARIZED";
+    public static final String MARK_SUMMARIZED = "Order.MARK_SUMMARIZED";
+    public static final String FIND_LINES = "Order.FIND_LINES";
+
+    //Maksymalna długość klucza idempotencji (nagłówek Idempotency-Key)
+    public static final int IDEMPOTENCY_KEY_LENGTH = 255;
 
     @Getter
     @Id
-    UUID id = UUID.randomUUID();
+    @Column(length = Uuids.LENGTH)
+    UUID id = Uuids.timeOrdered();
+
+    //Pozycje zamówień wczytanych bez złączenia (np. stronami) są pobierane zbiorczo - jedno zapytanie na 50 zamówień.
+    //Indeks klucza obcego order_id tworzy baza danych, a indeks book_id służy do wyszukiwania zamówień książki
+    @Getter
+    @ElementCollection
+    @CollectionTable(name = "order_lines", joinColumns = @JoinColumn(name = "order_id"),
+            indexes = @Index(name = "order_lines_book_idx", columnList = "book_id"))
+    @BatchSize(size = 50)
+    List<OrderLine> lines = new ArrayList<>();
 
+    //Starszy format zamówienia - jedna pozycja listy na każdą zamówioną sztukę. Lista nie jest zapisywana w bazie
+    //danych: przy składaniu zamówienia jest zamieniana na pozycje (lines).
     @Getter
-    @ManyToMany(cascade = {MERGE})
+    @Transient
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     List<Book> books = new ArrayList<>();
 
     @Getter
     @Temporal(TIMESTAMP)
     Date creationDate;
 
+    //Wartość zamówienia w chwili złożenia - obliczana raz, na podstawie cen zapisanych w pozycjach zamówienia
+    @Getter
+    @Setter
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    Integer totalValue;
+
+    //Klucz przesłany przez klienta w nagłówku Idempotency-Key - ponowienie żądania z tym samym kluczem nie tworzy
+    //kolejnego zamówienia
+    @Getter
+    @Setter
+    @JsonIgnore
+    @Column(unique = true, length = IDEMPOTENCY_KEY_LENGTH)
+    String idempotencyKey;
+
+    //Czy zamówienie zostało doliczone do zestawienia sprzedaży (SalesSummary) - znacznik jest ustawiany w tej samej
+    //transakcji, w której zwiększane są sumy sprzedaży
+    boolean summarized;
+
     /**
      * Ustawienie pola creationDate na aktualny czas w chwili zapisu zamówienia
      * do bazy danych.
@@ -0,0 +1,44 @@
+package net.stawrul.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import net.stawrul.utils.Uuids;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.util.UUID;
+
+/**
+ * Pozycja zamówienia - książka i liczba zamówionych sztuk.
+ */
+@Embeddable
+@EqualsAndHashCode
+public class OrderLine {
+
+    @Getter
+    @Setter
+    @Column(name = "book_id", nullable = false, length = Uuids.LENGTH)
+    UUID bookId;
+
+    @Getter
+    @Setter
+    int quantity;
+
+    //cena jednej sztuki w chwili złożenia zamówienia (null w zamówieniach złożonych przed wprowadzeniem tego pola)
+    @Getter
+    @Column(name = "unit_cost")
+    Integer unitCost;
+
+    public OrderLine() {}
+
+    public OrderLine(UUID bookId, int quantity) {
+        this.bookId = bookId;
+        this.quantity = quantity;
+    }
+
+    public OrderLine(UUID bookId, int quantity, Integer unitCost) {
+        this(bookId, quantity);
+        this.unitCost = unitCost;
+    }
+}
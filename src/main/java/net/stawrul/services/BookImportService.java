@@ -0,0 +1,136 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.events.BooksSavedEvent;
+import net.stawrul.services.exceptions.ValidationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Komponent (serwis) biznesowy do importu dużej liczby książek.
+ * <p>
+ * Książki są walidowane pojedynczo, a zapisywane porcjami po bookshop.books.import.batch-size sztuk - każda porcja
+ * w osobnej transakcji, wstawiana wsadowo (hibernate.jdbc.batch_size), po czym kontekst trwałości jest czyszczony.
+ * Dzięki temu zużycie pamięci nie zależy od liczby importowanych książek.
+ */
+@Service
+public class BookImportService {
+
+    private final BooksService booksService;
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+
+    public BookImportService(BooksService booksService, EntityManager em, PlatformTransactionManager transactionManager,
+                             ApplicationEventPublisher eventPublisher,
+                             @Value("${bookshop.books.import.batch-size:500}") int batchSize) {
+        this.booksService = booksService;
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import książek.
+     * <p>
+     * Odrzucane są książki, które nie przeszły walidacji (BooksService.validate) oraz książki o identyfikatorach już
+     * istniejących w bazie danych. Błąd odczytu danych wejściowych przerywa import - książki z wcześniejszych porcji
+     * pozostają zapisane.
+     *
+     * @param books książki do zaimportowania (np. odczytywane strumieniowo z ciała żądania)
+     * @return raport z importu
+     */
+    public ImportReport importBooks(Iterator<Book> books) {
+        ImportReport report = new ImportReport();
+        List<Book> chunk = new ArrayList<>(batchSize);
+        List<Integer> rows = new ArrayList<>(batchSize);
+
+        int row = 0;
+        try {
+            while (books.hasNext()) {
+                Book book = books.next();
+                row++;
+
+                try {
+                    booksService.validate(book);
+                    chunk.add(book);
+                    rows.add(row);
+                } catch (ValidationException e) {
+                    report.reject(row, book.getId(), e.getMessage());
+                }
+
+                if (chunk.size() == batchSize) {
+                    insert(chunk, rows, report);
+                }
+            }
+        } catch (RuntimeException e) {
+            report.fail("Malformed input after row " + row + ": " + e.getMessage());
+        }
+
+        insert(chunk, rows, report);
+        return report;
+    }
+
+    private void insert(List<Book> chunk, List<Integer> rows, ImportReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<Book> saved = new ArrayList<>(chunk.size());
+        List<Integer> duplicates = new ArrayList<>();
+        try {
+            transactionTemplate.execute(status -> {
+                Set<UUID> ids = new HashSet<>();
+                for (Book book : chunk) {
+                    ids.add(book.getId());
+                }
+
+                //jedno zapytanie sprawdzające, które identyfikatory z porcji już występują w bazie danych
+                Set<UUID> existing = new HashSet<>(em.createNamedQuery(Book.FIND_IDS, UUID.class)
+                        .setParameter("ids", ids)
+                        .getResultList());
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    Book book = chunk.get(i);
+                    if (existing.add(book.getId())) {
+                        em.persist(book);
+                        saved.add(book);
+                    } else {
+                        duplicates.add(i);
+                    }
+                }
+
+                em.flush();
+                em.clear();
+                eventPublisher.publishEvent(new BooksSavedEvent(saved));
+                return null;
+            });
+
+            report.accept(saved.size());
+            for (int i : duplicates) {
+                report.reject(rows.get(i), chunk.get(i).getId(), "Book already exists");
+            }
+
+        } catch (RuntimeException e) {
+            for (int i = 0; i < chunk.size(); i++) {
+                report.reject(rows.get(i), chunk.get(i).getId(), "Could not save book");
+            }
+        }
+
+        chunk.clear();
+        rows.clear();
+    }
+}
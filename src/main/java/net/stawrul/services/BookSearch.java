@@ -0,0 +1,50 @@
+package net.stawrul.services;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.stawrul.utils.Oprawa;
+
+import java.util.Date;
+
+/**
+ * Kryteria wyszukiwania książek (GET /books/search). Pominięte (null) kryteria nie ograniczają wyniku.
+ */
+public class BookSearch {
+
+    /**
+     * Początek tytułu lub - jeśli titleContains=true - dowolny jego fragment (bez rozróżniania wielkości liter).
+     */
+    @Getter
+    @Setter
+    private String title;
+
+    @Getter
+    @Setter
+    private boolean titleContains;
+
+    @Getter
+    @Setter
+    private Oprawa oprawa;
+
+    @Getter
+    @Setter
+    private Integer minCost;
+
+    @Getter
+    @Setter
+    private Integer maxCost;
+
+    /**
+     * Początek zakresu dat (włącznie).
+     */
+    @Getter
+    @Setter
+    private Date dateFrom;
+
+    /**
+     * Koniec zakresu dat (wyłącznie).
+     */
+    @Getter
+    @Setter
+    private Date dateBefore;
+}
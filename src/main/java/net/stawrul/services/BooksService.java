@@ -1,19 +1,38 @@
 package net.stawrul.services;
 
+import net.stawrul.metrics.ServiceMetrics;
 import net.stawrul.model.Book;
 import net.stawrul.model.Order;
+import net.stawrul.services.events.BooksSavedEvent;
 import net.stawrul.services.exceptions.ValidationException;
+import net.stawrul.utils.Cursors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Komponent (serwis) biznesowy do realizacji operacji na książkach.
  */
 @Service
-public class BooksService extends EntityService<Book> {
+public class BooksService extends EntityService<Book> implements ApplicationEventPublisherAware {
+
+    //Maksymalna liczba książek odnalezionych w indeksie tytułów, dla której wyszukiwanie korzysta z indeksu -
+    //przy krótszych (mniej selektywnych) fragmentach tytułu zapytanie korzysta z indeksu w bazie danych
+    static final int MAX_TITLE_INDEX_MATCHES = 1000;
+
+    TitleIndex titleIndex;
+
+    private ApplicationEventPublisher eventPublisher;
 
     //Instancja klasy EntityManger zostanie dostarczona przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
@@ -24,6 +43,16 @@ public class BooksService extends EntityService<Book> {
         super(em, Book.class, Book::getId);
     }
 
+    @Autowired(required = false)
+    public void setTitleIndex(TitleIndex titleIndex) {
+        this.titleIndex = titleIndex;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
     /**
      * Pobranie wszystkich książek z bazy danych.
      *
@@ -32,16 +61,170 @@ public class BooksService extends EntityService<Book> {
     public List<Book> findAll() {
         //pobranie listy wszystkich książek za pomocą zapytania nazwanego (ang. named query)
         //zapytanie jest zdefiniowane w klasie Book
-        return em.createNamedQuery(Book.FIND_ALL, Book.class).getResultList();
+        return metrics.time("books.find-all", () -> em.createNamedQuery(Book.FIND_ALL, Book.class).getResultList());
+    }
+
+    /**
+     * Pobranie jednej strony listy książek uporządkowanej według identyfikatorów.
+     * <p>
+     * Zapytanie pobiera tylko książki następujące po kursorze, więc jego koszt nie zależy od numeru strony.
+     *
+     * @param after kursor zwrócony wraz z poprzednią stroną lub null dla pierwszej strony
+     * @param limit liczba książek na stronie
+     * @return strona listy książek
+     */
+    public Page<Book> findPage(String after, int limit) {
+        TypedQuery<Book> query;
+        if (after == null) {
+            query = em.createNamedQuery(Book.FIND_FIRST_PAGE, Book.class);
+        } else {
+            UUID afterId = Cursors.toUuid(Cursors.decode(after, 1)[0]);
+            query = em.createNamedQuery(Book.FIND_PAGE, Book.class).setParameter("after", afterId);
+        }
+
+        TypedQuery<Book> page = query.setMaxResults(pageSize(limit) + 1);
+        List<Book> rows = metrics.time("books.find-page", page::getResultList);
+        return Page.of(rows, limit, book -> Cursors.encode(book.getId()));
+    }
+
+    /**
+     * Wyszukiwanie książek spełniających wszystkie podane kryteria - jedna strona wyników uporządkowanych według
+     * identyfikatorów.
+     * <p>
+     * Każde kryterium może korzystać z indeksu w bazie danych (tabela Book), z wyjątkiem wyszukiwania dowolnego
+     * fragmentu tytułu. Jeśli włączono indeks tytułów w pamięci (TitleIndex), wyszukiwanie po początku tytułu
+     * ogranicza zapytanie do odnalezionych w nim identyfikatorów.
+     *
+     * @param search kryteria wyszukiwania
+     * @param after kursor zwrócony wraz z poprzednią stroną lub null dla pierwszej strony
+     * @param limit liczba książek na stronie
+     * @return strona wyników
+     */
+    public Page<Book> search(BookSearch search, String after, int limit) {
+        if (search.getMinCost() != null && search.getMaxCost() != null && search.getMinCost() > search.getMaxCost())
+            throw new ValidationException("Invalid cost range");
+        if (search.getDateFrom() != null && search.getDateBefore() != null
+                && !search.getDateFrom().before(search.getDateBefore()))
+            throw new ValidationException("Invalid date range");
+
+        StringBuilder jpql = new StringBuilder("SELECT b FROM Book b WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+
+        if (search.getTitle() != null && !search.getTitle().isEmpty()) {
+            List<UUID> ids = null;
+            if (!search.isTitleContains() && titleIndex != null) {
+                ids = metrics.time("books.search.title-index",
+                        () -> titleIndex.findByPrefix(search.getTitle(), MAX_TITLE_INDEX_MATCHES));
+            }
+
+            if (ids != null) {
+                if (ids.isEmpty()) {
+                    return new Page<>(Collections.emptyList(), null);
+                }
+                jpql.append(" AND b.id IN :ids");
+                params.put("ids", ids);
+            } else {
+                String pattern = escapeLike(Book.titleKey(search.getTitle())) + "%";
+                jpql.append(" AND b.titleKey LIKE :title ESCAPE '!'");
+                params.put("title", search.isTitleContains() ? "%" + pattern : pattern);
+            }
+        }
+        if (search.getOprawa() != null) {
+            jpql.append(" AND b.oprawa = :oprawa");
+            params.put("oprawa", search.getOprawa());
+        }
+        if (search.getMinCost() != null) {
+            jpql.append(" AND b.cost >= :minCost");
+            params.put("minCost", search.getMinCost());
+        }
+        if (search.getMaxCost() != null) {
+            jpql.append(" AND b.cost <= :maxCost");
+            params.put("maxCost", search.getMaxCost());
+        }
+        if (search.getDateFrom() != null) {
+            jpql.append(" AND b.date >= :dateFrom");
+            params.put("dateFrom", search.getDateFrom());
+        }
+        if (search.getDateBefore() != null) {
+            jpql.append(" AND b.date < :dateBefore");
+            params.put("dateBefore", search.getDateBefore());
+        }
+        if (after != null) {
+            jpql.append(" AND b.id > :after");
+            params.put("after", Cursors.toUuid(Cursors.decode(after, 1)[0]));
+        }
+        jpql.append(" ORDER BY b.id");
+
+        TypedQuery<Book> query = em.createQuery(jpql.toString(), Book.class).setMaxResults(pageSize(limit) + 1);
+        params.forEach(query::setParameter);
+
+        List<Book> rows = metrics.time("books.search", query::getResultList);
+        return Page.of(rows, limit, book -> Cursors.encode(book.getId()));
+    }
+
+    //znaki specjalne operatora LIKE w tekście podanym przez klienta są poprzedzane znakiem '!'
+    private static String escapeLike(String text) {
+        return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Zapisanie nowej książki w bazie danych i powiadomienie pozostałych komponentów o zmianie (zdarzenie
+     * BooksSavedEvent).
+     *
+     * @param book nowa książka
+     */
+    @Override
+    @Transactional
+    public void insert(Book book) {
+        super.insert(book);
+        publishSaved(book);
+    }
+
+    /**
+     * Aktualizacja danych książki i powiadomienie pozostałych komponentów o zmianie (zdarzenie BooksSavedEvent).
+     * <p>
+     * Przekazane dane zastępują aktualny stan książki (np. w żądaniu PUT /books/{id}, które nie zawiera wersji),
+     * niezależnie od zmian wprowadzonych w międzyczasie przez zamówienia - wersja jest przepisywana z bazy danych.
+     *
+     * @param book książka istniejąca w bazie danych
+     */
+    @Override
+    @Transactional
+    public void update(Book book) {
+        Book current = em.find(Book.class, book.getId());
+        if (current != null) {
+            book.setVersion(current.getVersion());
+        }
+        super.update(book);
+        publishSaved(book);
+    }
+
+    private void publishSaved(Book book) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new BooksSavedEvent(Collections.singletonList(book)));
+        }
     }
 
     @Transactional
     public void addBook(Book book) {
-        validate(book);
-        save(book);
+        try {
+            validate(book);
+        } catch (ValidationException e) {
+            metrics.increment("books.rejected." + ServiceMetrics.label(e.getMessage()));
+            throw e;
+        }
+
+        //BooksController sprawdza, czy książka o tym identyfikatorze już istnieje, przed wywołaniem tej metody
+        insert(book);
     }
 
-    private void validate(Book book) {
+    /**
+     * Sprawdzenie poprawności danych książki.
+     *
+     * @param book książka
+     * @throws ValidationException jeśli tytuł jest zbyt krótki lub brakuje ceny bądź liczby sztuk
+     */
+    void validate(Book book) {
         if(book.getTitle() == null || book.getTitle().length() < 5)
             throw new ValidationException("Book title is too short");
 
@@ -0,0 +1,115 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.events.BooksSavedEvent;
+import net.stawrul.services.events.StockChangedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Licznik zmian katalogu książek - podstawa nagłówków ETag i Last-Modified odpowiedzi GET /books i GET /books/{id}
+ * (żądania warunkowe If-None-Match i If-Modified-Since są obsługiwane bez zapytań do bazy danych).
+ * <p>
+ * Licznik jest zwiększany po zatwierdzeniu transakcji, która dodała lub zmieniła książki (zdarzenie BooksSavedEvent)
+ * albo zmieniła ich stany magazynowe (StockChangedEvent) - już po aktualizacji tych książek w pamięci podręcznej
+ * drugiego poziomu, więc odpowiedź oznaczona nowym znacznikiem zawsze zawiera nowe dane. Dla każdej książki zapamiętywany jest
+ * numer jej ostatniej zmiany, dzięki czemu zamówienie nie unieważnia znaczników pozostałych książek.
+ * <p>
+ * Znaczniki zawierają czas uruchomienia aplikacji, więc nie pokrywają się ze znacznikami wydanymi przed ponownym
+ * uruchomieniem. Nagłówek Last-Modified ma dokładność jednej sekundy - klienci powinni korzystać ze znacznika ETag.
+ */
+@Component
+public class CatalogueVersion {
+
+    private final long started = System.currentTimeMillis();
+    private final String epoch = Long.toString(started, Character.MAX_RADIX);
+
+    private final AtomicLong counter = new AtomicLong();
+
+    //ostatnia zmiana całego katalogu i ostatnie zmiany poszczególnych książek
+    private volatile Change latest = new Change(0, started);
+    private final Map<UUID, Change> changes = new ConcurrentHashMap<>();
+
+    /**
+     * @return znacznik (ETag) aktualnej wersji całego katalogu
+     */
+    public String etag() {
+        return epoch + "-" + latest.number;
+    }
+
+    /**
+     * @return czas ostatniej zmiany katalogu w milisekundach
+     */
+    public long lastModified() {
+        return latest.time;
+    }
+
+    /**
+     * @param bookId identyfikator książki
+     * @return znacznik (ETag) aktualnej wersji książki
+     */
+    public String etag(UUID bookId) {
+        return epoch + "-" + changes.getOrDefault(bookId, Change.NONE).number;
+    }
+
+    /**
+     * @param bookId identyfikator książki
+     * @return czas ostatniej zmiany książki (lub uruchomienia aplikacji) w milisekundach
+     */
+    public long lastModified(UUID bookId) {
+        Change change = changes.get(bookId);
+        return change != null ? change.time : started;
+    }
+
+    /**
+     * Książki nie są usuwane, więc książka zmieniona od uruchomienia aplikacji na pewno istnieje.
+     *
+     * @param bookId identyfikator książki
+     * @return true, jeśli książka została dodana lub zmieniona od uruchomienia aplikacji
+     */
+    public boolean contains(UUID bookId) {
+        return changes.containsKey(bookId);
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksSaved(BooksSavedEvent event) {
+        changed(event.getBooks().stream().map(Book::getId).collect(Collectors.toList()));
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        changed(event.getBookIds());
+    }
+
+    private void changed(Collection<UUID> bookIds) {
+        Change change = new Change(counter.incrementAndGet(), System.currentTimeMillis());
+        for (UUID bookId : bookIds) {
+            changes.put(bookId, change);
+        }
+        latest = change;
+    }
+
+    private static final class Change {
+
+        static final Change NONE = new Change(0, 0);
+
+        final long number;
+        final long time;
+
+        Change(long number, long time) {
+            this.number = number;
+            this.time = time;
+        }
+    }
+}
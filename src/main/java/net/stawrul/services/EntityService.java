@@ -1,8 +1,12 @@
 package net.stawrul.services;
 
+import net.stawrul.metrics.ServiceMetrics;
+import net.stawrul.services.exceptions.ValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.util.Locale;
 import java.util.UUID;
 import java.util.function.Function;
 
@@ -17,10 +21,20 @@ import java.util.function.Function;
  * @param <T> typ obiektów encyjnych, na których operuje serwis biznesowy
  */
 abstract public class EntityService<T> {
+
+    /**
+     * Największa dopuszczalna liczba elementów na jednej stronie wyników.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
     final EntityManager em;
     private final Class<T> entityClass;
     private final Function<T, Object> idSupplier;
 
+    //metryki czasu wykonania operacji, np. entity.book.find
+    ServiceMetrics metrics = ServiceMetrics.NONE;
+    private final String metricPrefix;
+
     /**
      * @param em instancja klasy EntityManager
      * @param entityClass klasa encyjna, na której mają być realizowane operacje
@@ -30,28 +44,60 @@ abstract public class EntityService<T> {
         this.em = em;
         this.entityClass = entityClass;
         this.idSupplier = idSupplier;
+        this.metricPrefix = "entity." + entityClass.getSimpleName().toLowerCase(Locale.ROOT);
+    }
+
+    @Autowired(required = false)
+    public void setServiceMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
      * Zapisanie stanu obiektu encyjnego w bazie danych.
      *
-     * Może być używana zarówno do zapisywania nowych elementów w bazie danych jak i aktualizowania istniejących.
+     * Może być używana zarówno do zapisywania nowych elementów w bazie danych jak i aktualizowania istniejących.
+     * Wymaga dodatkowego zapytania sprawdzającego, czy obiekt już istnieje - jeśli jest to wiadome wcześniej, należy
+     * użyć metody insert lub update.
      *
      * @param entity
      */
     @Transactional
     public void save(T entity) {
-        if (em.find(entityClass, idSupplier.apply(entity)) == null) {
+        Object id = idSupplier.apply(entity);
+        if (metrics.time(metricPrefix + ".find", () -> em.find(entityClass, id)) == null) {
             //Jeśli identyfikator nie występuje w bazie danych, obiekt encyjny jest w stanie new
-            em.persist(entity);
+            insert(entity);
         } else {
             //Jeśli identyfikator występuje w bazie danych, należy przeprowadzić obiekt do stanu managed, aby
             //wprowadzone w nim modyfikacje zostały zarejestrowane w ramach kontekstu trwałości (ang. persistence
-            //context). Zmiany zostaną zapisane w bazie danych, gdy bieżąca transakcja zostanie zatwierdzona.
-            em.merge(entity);
+            //context). Zmiany zostaną zapisane w bazie danych, gdy bieżąca transakcja zostanie zatwierdzona.
+            update(entity);
         }
     }
 
+    /**
+     * Zapisanie nowego obiektu encyjnego w bazie danych - bez sprawdzania, czy identyfikator już istnieje.
+     *
+     * Jeśli obiekt o tym identyfikatorze istnieje, zatwierdzenie transakcji zakończy się błędem naruszenia klucza
+     * głównego.
+     *
+     * @param entity nowy obiekt encyjny
+     */
+    @Transactional
+    public void insert(T entity) {
+        metrics.time(metricPrefix + ".insert", () -> em.persist(entity));
+    }
+
+    /**
+     * Aktualizacja istniejącego obiektu encyjnego.
+     *
+     * @param entity obiekt encyjny, którego identyfikator występuje w bazie danych
+     */
+    @Transactional
+    public void update(T entity) {
+        metrics.time(metricPrefix + ".update", () -> em.merge(entity));
+    }
+
     /**
      * Wyszukiwanie obiektów encyjnych na podstawie identyfikatora.
      *
@@ -59,6 +105,19 @@ abstract public class EntityService<T> {
      * @return odnaleziony obiekt encyjny lub null jeśli nie znaleziono żadnego pasującego do parametru id
      */
     public T find(UUID id) {
-        return em.find(entityClass, id);
+        return metrics.time(metricPrefix + ".find", () -> em.find(entityClass, id));
+    }
+
+    /**
+     * Sprawdzenie rozmiaru strony wyników przekazanego przez klienta.
+     *
+     * @param limit żądana liczba elementów na stronie
+     * @return limit
+     * @throws ValidationException jeśli limit jest mniejszy od 1 lub większy niż MAX_PAGE_SIZE
+     */
+    protected static int pageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new ValidationException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        return limit;
     }
 }
@@ -0,0 +1,89 @@
+package net.stawrul.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Indeks ostatnio użytych kluczy idempotencji (nagłówek Idempotency-Key żądania POST /orders).
+ * <p>
+ * Kluczem jest wartość nagłówka, a wartością identyfikator zamówienia złożonego z tym kluczem. Liczba kluczy jest
+ * ograniczona (bookshop.orders.idempotency.maximum-size), a każdy wpis wygasa po
+ * bookshop.orders.idempotency.expire-after-write-seconds sekundach - starsze klucze są wyszukiwane w bazie danych
+ * (kolumna Order.idempotencyKey z ograniczeniem unikalności). Klucz zamówienia, które czeka jeszcze na zapis (np.
+ * w kolejce OrderIngestService), jest rezerwowany w indeksie, aby ponowione żądanie nie dodało drugiego zamówienia.
+ */
+@Component
+public class IdempotencyKeys {
+
+    private final Cache<String, UUID> cache;
+
+    public IdempotencyKeys(@Value("${bookshop.orders.idempotency.maximum-size:100000}") long maximumSize,
+                           @Value("${bookshop.orders.idempotency.expire-after-write-seconds:86400}")
+                                   long expireAfterWriteSeconds) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Pobranie identyfikatora zamówienia z indeksu lub - w razie jego braku - za pomocą funkcji loader.
+     *
+     * @param key klucz idempotencji
+     * @param loader funkcja wyszukująca zamówienie w bazie danych
+     * @return identyfikator zamówienia lub null, jeśli klucz nie był używany (brak zamówienia nie jest zapamiętywany)
+     */
+    public UUID get(String key, Function<String, UUID> loader) {
+        return cache.get(key, loader);
+    }
+
+    /**
+     * Zapamiętanie klucza zamówienia. Jeśli metoda jest wywoływana w ramach transakcji, klucz trafia do indeksu dopiero
+     * po jej zatwierdzeniu.
+     *
+     * @param key klucz idempotencji
+     * @param orderId identyfikator zamówienia
+     */
+    public void put(String key, UUID orderId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    cache.put(key, orderId);
+                }
+            });
+        } else {
+            cache.put(key, orderId);
+        }
+    }
+
+    /**
+     * Zarezerwowanie klucza dla zamówienia, które nie zostało jeszcze zapisane w bazie danych.
+     *
+     * @param key klucz idempotencji
+     * @param orderId identyfikator zamówienia
+     * @return identyfikator zamówienia, dla którego klucz był już zarezerwowany, lub null, jeśli klucz został
+     * zarezerwowany dla zamówienia orderId
+     */
+    public UUID reserve(String key, UUID orderId) {
+        return cache.asMap().putIfAbsent(key, orderId);
+    }
+
+    /**
+     * Zwolnienie klucza zarezerwowanego dla zamówienia, które nie zostało zapisane (np. zostało odrzucone).
+     *
+     * @param key klucz idempotencji
+     * @param orderId identyfikator zamówienia
+     */
+    public void release(String key, UUID orderId) {
+        cache.asMap().remove(key, orderId);
+    }
+}
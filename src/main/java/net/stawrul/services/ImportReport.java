@@ -0,0 +1,59 @@
+package net.stawrul.services;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Raport z importu książek - liczba zapisanych wierszy i lista wierszy odrzuconych wraz z przyczyną.
+ */
+public class ImportReport {
+
+    /**
+     * Pojedynczy odrzucony wiersz.
+     */
+    public static class Rejection {
+
+        //numer wiersza (licząc od 1)
+        @Getter
+        private final int row;
+
+        @Getter
+        private final UUID id;
+
+        @Getter
+        private final String reason;
+
+        Rejection(int row, UUID id, String reason) {
+            this.row = row;
+            this.id = id;
+            this.reason = reason;
+        }
+    }
+
+    @Getter
+    private int accepted;
+
+    @Getter
+    private final List<Rejection> rejected = new ArrayList<>();
+
+    /**
+     * Opis błędu, który przerwał import (np. niepoprawny format danych wejściowych) lub null.
+     */
+    @Getter
+    private String error;
+
+    void accept(int count) {
+        accepted += count;
+    }
+
+    void reject(int row, UUID id, String reason) {
+        rejected.add(new Rejection(row, id, reason));
+    }
+
+    void fail(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,251 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.events.BooksSavedEvent;
+import net.stawrul.services.events.StockChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rejestr stanów magazynowych przechowywany w pamięci (tryb StockMode.LEDGER).
+ * <p>
+ * Każda książka ma własny licznik modyfikowany operacją compare-and-set, więc zamówienia na ten sam tytuł nie
+ * czekają na blokadę wiersza w bazie danych. Zmiany wynikające z zatwierdzonych zamówień są sumowane i zapisywane
+ * w tabeli Book w tle (ang. write-behind), jednym zapytaniem UPDATE na książkę w ramach jednej transakcji.
+ * <p>
+ * Komponent jest tworzony tylko wtedy, gdy bookshop.orders.stock-mode=LEDGER. Przy starcie aplikacji stany są
+ * wczytywane z bazy danych, a później to rejestr jest źródłem prawdy o liczbie dostępnych sztuk. Tabela Book jest
+ * opóźniona względem rejestru o sprzedaż jeszcze niezapisaną w tle, dlatego ręczna zmiana stanu (PUT /books/{id})
+ * koryguje rejestr o różnicę względem poprzedniej wartości w tabeli, zamiast go nadpisywać.
+ */
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "bookshop.orders.stock-mode", havingValue = "LEDGER")
+public class InventoryLedger implements ApplicationEventPublisherAware {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryLedger.class);
+
+    private final BooksService booksService;
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+
+    //stany magazynowe książek wczytanych do rejestru
+    private final ConcurrentMap<UUID, Stock> stock = new ConcurrentHashMap<>();
+
+    //liczba sztuk sprzedanych w zatwierdzonych zamówieniach, jeszcze nie zapisana w tabeli Book
+    private final ConcurrentMap<UUID, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    private ApplicationEventPublisher eventPublisher;
+
+    public InventoryLedger(BooksService booksService, EntityManager em, PlatformTransactionManager transactionManager) {
+        this.booksService = booksService;
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Wczytanie stanów magazynowych wszystkich książek przy starcie aplikacji.
+     */
+    @PostConstruct
+    public void load() {
+        for (Book book : booksService.findAll()) {
+            stock.put(book.getId(), new Stock(amountOf(book)));
+        }
+    }
+
+    /**
+     * Rezerwacja sztuk książek na potrzeby zamówienia.
+     * <p>
+     * Rezerwacja jest niepodzielna - jeśli którejkolwiek książki brakuje, sztuki zarezerwowane wcześniej są zwracane.
+     * Jeśli metoda jest wywoływana w ramach transakcji, rezerwacja jest zwalniana po jej wycofaniu, a sprzedane sztuki
+     * trafiają do kolejki zapisu dopiero po jej zatwierdzeniu.
+     *
+     * @param quantities liczba zamawianych sztuk, kluczem jest identyfikator książki
+     * @return true, jeśli udało się zarezerwować wszystkie sztuki; false w przypadku braku towaru
+     */
+    public boolean reserve(Map<UUID, Integer> quantities) {
+        Map<UUID, Integer> reserved = new HashMap<>();
+
+        for (Map.Entry<UUID, Integer> entry : quantities.entrySet()) {
+            if (!take(entry.getKey(), entry.getValue())) {
+                release(reserved);
+                return false;
+            }
+            reserved.put(entry.getKey(), entry.getValue());
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        record(reserved);
+                    } else {
+                        release(reserved);
+                    }
+                }
+            });
+        } else {
+            record(reserved);
+        }
+        return true;
+    }
+
+    /**
+     * @param id identyfikator książki
+     * @return liczba sztuk dostępnych w rejestrze lub null, jeśli książka nie istnieje
+     */
+    public Integer available(UUID id) {
+        Stock counter = counter(id);
+        return counter != null ? counter.available.get() : null;
+    }
+
+    /**
+     * Zapisanie zaległych zmian stanów magazynowych w tabeli Book.
+     * <p>
+     * Wywoływane cyklicznie co bookshop.inventory.flush-interval-ms milisekund oraz przy zamykaniu aplikacji.
+     * W razie błędu zmiany wracają do kolejki i zostaną zapisane przy następnej próbie.
+     */
+    @Scheduled(fixedDelayString = "${bookshop.inventory.flush-interval-ms:500}")
+    @PreDestroy
+    public void flush() {
+        Map<UUID, Integer> deltas = new TreeMap<>();
+        for (Map.Entry<UUID, AtomicInteger> entry : pending.entrySet()) {
+            int sold = entry.getValue().getAndSet(0);
+            if (sold != 0) {
+                deltas.put(entry.getKey(), sold);
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                for (Map.Entry<UUID, Integer> entry : deltas.entrySet()) {
+                    StockUpdates.withdraw(em, Book.WITHDRAW, entry.getKey(), entry.getValue());
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not write inventory changes of {} books, will retry", deltas.size(), e);
+            record(deltas);
+            return;
+        }
+
+        deltas.forEach((id, sold) -> stock.get(id).stored.addAndGet(-sold));
+        eventPublisher.publishEvent(new StockChangedEvent(deltas.keySet()));
+    }
+
+    /**
+     * Ręczna zmiana danych książki (np. PUT /books/{id}) zmienia stan w rejestrze o różnicę między zapisaną liczbą
+     * sztuk a poprzednią wartością w tabeli Book.
+     * <p>
+     * Sprzedaż jeszcze niezapisana w tle i rezerwacje trwających zamówień są zachowywane - przy najbliższym zapisie
+     * zostaną odjęte od nowej wartości w tabeli. Zapis książki z niezmienioną liczbą sztuk (np. odczytaną przed
+     * zapisem w tle) nie zmienia więc stanu w rejestrze.
+     *
+     * @param event zdarzenie zapisu książek
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksSaved(BooksSavedEvent event) {
+        for (Book book : event.getBooks()) {
+            int amount = amountOf(book);
+            Stock counter = stock.putIfAbsent(book.getId(), new Stock(amount));
+            if (counter != null) {
+                counter.available.addAndGet(amount - counter.stored.getAndSet(amount));
+            }
+        }
+    }
+
+    private boolean take(UUID id, int quantity) {
+        Stock counter = counter(id);
+        if (counter == null) {
+            return false;
+        }
+
+        int current;
+        do {
+            current = counter.available.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!counter.available.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    private void release(Map<UUID, Integer> quantities) {
+        quantities.forEach((id, quantity) -> stock.get(id).available.addAndGet(quantity));
+    }
+
+    private void record(Map<UUID, Integer> quantities) {
+        quantities.forEach((id, quantity) ->
+                pending.computeIfAbsent(id, key -> new AtomicInteger()).addAndGet(quantity));
+    }
+
+    //książki dodane po starcie aplikacji są wczytywane przy pierwszym zamówieniu - odczyt z bazy danych odbywa się
+    //poza ConcurrentHashMap (nie blokuje innych książek), a przy równoległym wczytaniu zostaje stan dodany pierwszy
+    private Stock counter(UUID id) {
+        Stock counter = stock.get(id);
+        if (counter != null) {
+            return counter;
+        }
+
+        Book book = booksService.find(id);
+        if (book == null) {
+            return null;
+        }
+        Stock loaded = new Stock(amountOf(book));
+        counter = stock.putIfAbsent(id, loaded);
+        return counter != null ? counter : loaded;
+    }
+
+    private static int amountOf(Book book) {
+        return book.getAmount() != null ? book.getAmount() : 0;
+    }
+
+    /**
+     * Stan magazynowy jednej książki w rejestrze.
+     */
+    private static class Stock {
+
+        //liczba sztuk dostępnych do sprzedaży
+        final AtomicInteger available;
+
+        //liczba sztuk w tabeli Book - bez sprzedaży jeszcze niezapisanej w tle
+        final AtomicInteger stored;
+
+        Stock(int amount) {
+            this.available = new AtomicInteger(amount);
+            this.stored = new AtomicInteger(amount);
+        }
+    }
+}
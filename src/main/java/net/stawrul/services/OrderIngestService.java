@@ -0,0 +1,208 @@
+package net.stawrul.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.stawrul.metrics.ServiceMetrics;
+import net.stawrul.model.Order;
+import net.stawrul.services.exceptions.ValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchroniczne przyjmowanie zamówień z grupowym zatwierdzaniem transakcji (ang. group commit).
+ * <p>
+ * Zamówienia trafiają do ograniczonej kolejki (bookshop.orders.ingest.queue-capacity), z której kilka wątków
+ * zapisujących (bookshop.orders.ingest.writers) pobiera je porcjami do bookshop.orders.ingest.batch-size sztuk.
+ * Cała porcja jest zapisywana w jednej transakcji, więc koszt zatwierdzenia transakcji rozkłada się na wiele zamówień.
+ * <p>
+ * Jeśli którekolwiek zamówienie z porcji zostanie odrzucone, transakcja jest wycofywana, a zamówienia z porcji są
+ * zapisywane ponownie - każde w osobnej transakcji - tak aby odrzucone zostało tylko to błędne. JPA nie pozwala
+ * bezpiecznie wycofać się do punktu zapisu (ang. savepoint), ponieważ kontekst trwałości zachowałby zmiany wycofane
+ * w bazie danych.
+ * <p>
+ * Komponent jest tworzony tylko wtedy, gdy bookshop.orders.ingest.enabled=true.
+ */
+@Service
+@ConditionalOnProperty(name = "bookshop.orders.ingest.enabled", havingValue = "true")
+public class OrderIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderIngestService.class);
+
+    private final OrdersService ordersService;
+    private final OrderRetryPolicy orderRetryPolicy;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Order> queue;
+    private final int batchSize;
+    private final int writers;
+
+    //stany zamówień - wpisy wygasają po bookshop.orders.ingest.status-ttl-seconds sekundach
+    private final Cache<UUID, OrderStatus> statuses;
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    private ServiceMetrics metrics = ServiceMetrics.NONE;
+
+    public OrderIngestService(OrdersService ordersService, OrderRetryPolicy orderRetryPolicy,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${bookshop.orders.ingest.queue-capacity:1000}") int queueCapacity,
+                              @Value("${bookshop.orders.ingest.batch-size:50}") int batchSize,
+                              @Value("${bookshop.orders.ingest.writers:2}") int writers,
+                              @Value("${bookshop.orders.ingest.status-ttl-seconds:600}") long statusTtlSeconds) {
+        this.ordersService = ordersService;
+        this.orderRetryPolicy = orderRetryPolicy;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.writers = writers;
+        this.statuses = Caffeine.newBuilder()
+                .expireAfterWrite(statusTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Autowired(required = false)
+    public void setServiceMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        executor = Executors.newFixedThreadPool(writers);
+        for (int i = 0; i < writers; i++) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Zatrzymanie wątków zapisujących - zamówienia pozostałe w kolejce są jeszcze zapisywane.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("{} queued orders were not written before shutdown", queue.size());
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Dodanie zamówienia do kolejki. Metoda nie czeka na zwolnienie miejsca w kolejce.
+     * <p>
+     * Klucz idempotencji zamówienia powinien zostać wcześniej zarezerwowany (OrdersService.reserveIdempotencyKey) -
+     * jest zwalniany, jeśli zamówienie nie zostanie zapisane.
+     *
+     * @param order zamówienie do zapisania
+     * @return true, jeśli zamówienie zostało przyjęte; false, jeśli kolejka jest pełna
+     */
+    public boolean submit(Order order) {
+        statuses.put(order.getId(), OrderStatus.QUEUED);
+        if (!queue.offer(order)) {
+            statuses.invalidate(order.getId());
+            releaseIdempotencyKey(order);
+            metrics.increment("orders.ingest.queue-full");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param id identyfikator zamówienia
+     * @return stan zamówienia lub null, jeśli zamówienie nie było przyjęte przez ten serwis (lub jego stan wygasł)
+     */
+    public OrderStatus status(UUID id) {
+        return statuses.getIfPresent(id);
+    }
+
+    //pętla wątku zapisującego
+    private void drain() {
+        List<Order> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Order first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Could not write a batch of {} orders", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Zapisanie porcji zamówień w jednej transakcji, a w razie niepowodzenia - każdego zamówienia osobno.
+     *
+     * @param batch porcja zamówień
+     */
+    void write(List<Order> batch) {
+        metrics.record("orders.ingest.batch-size", batch.size());
+        try {
+            metrics.time("orders.ingest.batch", () -> transactionTemplate.execute(status -> {
+                batch.forEach(ordersService::placeOrder);
+                return null;
+            }));
+            batch.forEach(order -> statuses.put(order.getId(), OrderStatus.ACCEPTED));
+            return;
+        } catch (RuntimeException e) {
+            log.debug("Batch of {} orders rolled back, writing orders one by one", batch.size(), e);
+            metrics.increment("orders.ingest.fallback");
+        }
+
+        for (Order order : batch) {
+            OrderStatus status = writeOne(order);
+            if (status.getState() != OrderStatus.State.ACCEPTED) {
+                //ponowione żądanie z tym samym kluczem może złożyć zamówienie od nowa
+                releaseIdempotencyKey(order);
+            }
+            statuses.put(order.getId(), status);
+        }
+    }
+
+    private void releaseIdempotencyKey(Order order) {
+        if (order.getIdempotencyKey() != null) {
+            ordersService.releaseIdempotencyKey(order.getIdempotencyKey(), order.getId());
+        }
+    }
+
+    private OrderStatus writeOne(Order order) {
+        try {
+            //zamówienie zapisywane osobno jest ponawiane w razie konfliktu z równoległym zamówieniem
+            orderRetryPolicy.run(() -> transactionTemplate.execute(status -> {
+                ordersService.placeOrder(order);
+                return null;
+            }));
+            return OrderStatus.ACCEPTED;
+        } catch (ValidationException e) {
+            return new OrderStatus(OrderStatus.State.REJECTED, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Could not write order {}", order.getId(), e);
+            return new OrderStatus(OrderStatus.State.FAILED, "Order could not be saved");
+        }
+    }
+}
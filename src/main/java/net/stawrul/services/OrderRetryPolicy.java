@@ -0,0 +1,113 @@
+package net.stawrul.services;
+
+import net.stawrul.metrics.ServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.LockTimeoutException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PessimisticLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Ponawianie operacji zakończonych konfliktem współbieżnych transakcji - np. składania zamówienia
+ * (OrdersService.placeOrder), gdy inne zamówienie zmieniło w tym czasie stan magazynowy tej samej książki (wersja
+ * Book.version) lub gdy transakcja została wybrana do wycofania w wyniku zakleszczenia.
+ * <p>
+ * Operacja jest wykonywana co najwyżej bookshop.orders.retry.max-attempts razy. Przed kolejną próbą wątek czeka losowy
+ * czas z przedziału od zera do podwajanej po każdej próbie granicy (bookshop.orders.retry.initial-backoff-ms, nie
+ * więcej niż bookshop.orders.retry.max-backoff-ms) - losowość rozprasza ponowienia zamówień, które zderzyły się ze
+ * sobą. Każda próba wykonuje całą operację od nowa, więc stany magazynowe są ponownie odczytywane i sprawdzane.
+ * <p>
+ * Operacja wywołana w ramach trwającej transakcji jest wykonywana tylko raz - konflikt oznacza wycofanie całej
+ * transakcji, więc ponowić można tylko ją w całości.
+ */
+@Component
+public class OrderRetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    private ServiceMetrics metrics = ServiceMetrics.NONE;
+
+    public OrderRetryPolicy(@Value("${bookshop.orders.retry.max-attempts:5}") int maxAttempts,
+                            @Value("${bookshop.orders.retry.initial-backoff-ms:10}") long initialBackoffMs,
+                            @Value("${bookshop.orders.retry.max-backoff-ms:200}") long maxBackoffMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    @Autowired(required = false)
+    public void setServiceMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param action operacja wykonywana w osobnej transakcji (np. metoda komponentu z adnotacją @Transactional)
+     * @throws ConcurrencyFailureException jeśli każda z prób zakończyła się konfliktem
+     */
+    public void run(Runnable action) {
+        execute(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param action operacja wykonywana w osobnej transakcji (np. metoda komponentu z adnotacją @Transactional)
+     * @return wynik operacji
+     * @throws ConcurrencyFailureException jeśli każda z prób zakończyła się konfliktem
+     */
+    public <T> T execute(Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    metrics.increment("orders.retry.exhausted");
+                    throw e instanceof ConcurrencyFailureException ? e
+                            : new ConcurrencyFailureException("Conflict after " + attempt + " attempts", e);
+                }
+                metrics.increment("orders.retry");
+            }
+
+            sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+            backoff = Math.min(backoff * 2, maxBackoffMs);
+        }
+    }
+
+    /**
+     * @param e wyjątek zgłoszony przez operację
+     * @return true, jeśli wyjątek oznacza konflikt współbieżnych transakcji - wyjątki JPA zgłaszane podczas zapisu
+     * zmian w trakcie operacji lub wyjątki Spring zgłaszane przy zatwierdzaniu transakcji
+     */
+    static boolean isConflict(RuntimeException e) {
+        return e instanceof ConcurrencyFailureException
+                || e instanceof OptimisticLockException
+                || e instanceof PessimisticLockException
+                || e instanceof LockTimeoutException;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrencyFailureException("Interrupted while waiting to retry", e);
+        }
+    }
+}
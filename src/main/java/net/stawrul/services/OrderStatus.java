@@ -0,0 +1,37 @@
+package net.stawrul.services;
+
+import lombok.Getter;
+
+/**
+ * Stan zamówienia przyjętego do asynchronicznej obsługi (OrderIngestService).
+ */
+public class OrderStatus {
+
+    public enum State {
+        //zamówienie czeka w kolejce na zapis
+        QUEUED,
+        //zamówienie zostało zapisane
+        ACCEPTED,
+        //zamówienie zostało odrzucone przez walidację (np. brak towaru)
+        REJECTED,
+        //zapis zamówienia nie powiódł się z innego powodu (np. błąd bazy danych)
+        FAILED
+    }
+
+    static final OrderStatus QUEUED = new OrderStatus(State.QUEUED, null);
+    static final OrderStatus ACCEPTED = new OrderStatus(State.ACCEPTED, null);
+
+    @Getter
+    private final State state;
+
+    /**
+     * Przyczyna odrzucenia zamówienia lub null.
+     */
+    @Getter
+    private final String reason;
+
+    OrderStatus(State state, String reason) {
+        this.state = state;
+        this.reason = reason;
+    }
+}
@@ -1,19 +1,101 @@
 package net.stawrul.services;
 
+import net.stawrul.metrics.ServiceMetrics;
 import net.stawrul.model.Book;
 import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.events.OrderPlacedEvent;
+import net.stawrul.services.events.StockChangedEvent;
+import net.stawrul.services.exceptions.OrderValidationException;
 import net.stawrul.services.exceptions.ValidationException;
+import net.stawrul.utils.Cursors;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Komponent (serwis) biznesowy do realizacji operacji na zamówieniach.
  */
 @Service
-public class OrdersService extends EntityService<Order> {
+public class OrdersService extends EntityService<Order> implements ApplicationEventPublisherAware {
+
+    /**
+     * Sposób zmniejszania stanów magazynowych przy składaniu zamówienia.
+     */
+    public enum StockMode {
+        /**
+         * Odczyt pola amount, sprawdzenie dostępności i zapis zmodyfikowanego obiektu encyjnego.
+         */
+        ENTITY,
+
+        /**
+         * Pojedyncze, warunkowe zapytanie UPDATE dla każdej książki (zapytanie Book.RESERVE) - zmniejszenie stanu
+         * odbywa się atomowo w bazie danych, bez blokad pesymistycznych i bez ryzyka utraty aktualizacji.
+         */
+        CONDITIONAL_UPDATE,
+
+        /**
+         * Rezerwacja w rejestrze stanów przechowywanym w pamięci (komponent InventoryLedger) - zmiany są zapisywane
+         * w tabeli Book w tle.
+         */
+        LEDGER
+    }
+
+    /**
+     * Sposób walidacji zamówienia.
+     */
+    public enum ValidationMode {
+        /**
+         * Walidacja kończy się wyjątkiem ValidationException przy pierwszym wykrytym błędzie.
+         */
+        FIRST_ERROR,
+
+        /**
+         * Wszystkie pozycje zamówienia są sprawdzane w jednym przebiegu (również dostępność zamówionej liczby sztuk),
+         * a wykryte błędy są zgłaszane razem wyjątkiem OrderValidationException.
+         */
+        COLLECT_ALL
+    }
+
+    StockMode stockMode = StockMode.ENTITY;
+
+    ValidationMode validationMode = ValidationMode.FIRST_ERROR;
+
+    //liczba książek w zamówieniu, od której w trybie COLLECT_ALL są one sprawdzane równolegle
+    int parallelValidationThreshold = 1000;
+
+    InventoryLedger inventoryLedger;
+
+    int exportChunkSize = 500;
+
+    IdempotencyKeys idempotencyKeys;
+
+    private ApplicationEventPublisher eventPublisher;
 
     //Instancja klasy EntityManger zostanie dostarczona przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
@@ -24,20 +106,180 @@ public class OrdersService extends EntityService<Order> {
         super(em, Order.class, Order::getId);
     }
 
+    @Value("${bookshop.orders.stock-mode:ENTITY}")
+    public void setStockMode(StockMode stockMode) {
+        this.stockMode = stockMode;
+    }
+
+    @Value("${bookshop.orders.validation.mode:FIRST_ERROR}")
+    public void setValidationMode(ValidationMode validationMode) {
+        this.validationMode = validationMode;
+    }
+
+    @Value("${bookshop.orders.validation.parallel-threshold:1000}")
+    public void setParallelValidationThreshold(int parallelValidationThreshold) {
+        this.parallelValidationThreshold = parallelValidationThreshold;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Value("${bookshop.orders.export.chunk-size:500}")
+    public void setExportChunkSize(int exportChunkSize) {
+        this.exportChunkSize = exportChunkSize;
+    }
+
+    @Autowired(required = false)
+    public void setInventoryLedger(InventoryLedger inventoryLedger) {
+        this.inventoryLedger = inventoryLedger;
+    }
+
+    @Autowired(required = false)
+    public void setIdempotencyKeys(IdempotencyKeys idempotencyKeys) {
+        this.idempotencyKeys = idempotencyKeys;
+    }
+
     /**
      * Pobranie wszystkich zamówień z bazy danych.
      *
      * @return lista zamówień
      */
     public List<Order> findAll() {
-        return em.createQuery("SELECT o FROM Order o", Order.class).getResultList();
+        //pozycje są pobierane w tym samym zapytaniu (złączenie z pobraniem, ang. fetch join); wynik zawiera jeden
+        //wiersz na każdą pozycję zamówienia, dlatego powtórzenia zamówień są usuwane po stronie aplikacji
+        List<Order> rows = em.createQuery("SELECT o FROM Order o LEFT JOIN FETCH o.lines", Order.class)
+                .getResultList();
+        return new ArrayList<>(new LinkedHashSet<>(rows));
+    }
+
+    /**
+     * Wyszukiwanie zamówienia na podstawie identyfikatora wraz z jego pozycjami (jedno zapytanie).
+     *
+     * @param id identyfikator zamówienia
+     * @return odnalezione zamówienie lub null
+     */
+    public Order findWithLines(UUID id) {
+        List<Order> rows = em.createQuery("SELECT o FROM Order o LEFT JOIN FETCH o.lines WHERE o.id = :id", Order.class)
+                .setParameter("id", id)
+                .getResultList();
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Wyszukanie zamówienia złożonego wcześniej z podanym kluczem idempotencji (nagłówek Idempotency-Key).
+     * <p>
+     * Ostatnio użyte klucze są przechowywane w pamięci (IdempotencyKeys), starsze są wyszukiwane w bazie danych.
+     *
+     * @param idempotencyKey klucz idempotencji
+     * @return identyfikator zamówienia lub null, jeśli klucz nie był wcześniej użyty
+     */
+    public UUID findIdByIdempotencyKey(String idempotencyKey) {
+        Function<String, UUID> loader = key -> em
+                .createQuery("SELECT o.id FROM Order o WHERE o.idempotencyKey = :key", UUID.class)
+                .setParameter("key", key)
+                .getResultList()
+                .stream()
+                .findFirst()
+                .orElse(null);
+        return idempotencyKeys != null ? idempotencyKeys.get(idempotencyKey, loader) : loader.apply(idempotencyKey);
+    }
+
+    /**
+     * Zarezerwowanie klucza idempotencji dla zamówienia, które zostanie zapisane później (np. przez OrderIngestService).
+     * Ponowione żądanie z tym samym kluczem odnajduje zarezerwowane zamówienie metodą findIdByIdempotencyKey.
+     *
+     * @param idempotencyKey klucz idempotencji
+     * @param orderId identyfikator zamówienia
+     * @return identyfikator zamówienia złożonego lub zarezerwowanego wcześniej z tym kluczem albo null, jeśli klucz
+     * został zarezerwowany dla zamówienia orderId
+     */
+    public UUID reserveIdempotencyKey(String idempotencyKey, UUID orderId) {
+        UUID existing = findIdByIdempotencyKey(idempotencyKey);
+        if (existing != null || idempotencyKeys == null) {
+            return existing;
+        }
+        return idempotencyKeys.reserve(idempotencyKey, orderId);
+    }
+
+    /**
+     * Zwolnienie klucza idempotencji zarezerwowanego dla zamówienia, które nie zostało zapisane.
+     *
+     * @param idempotencyKey klucz idempotencji
+     * @param orderId identyfikator zamówienia
+     */
+    public void releaseIdempotencyKey(String idempotencyKey, UUID orderId) {
+        if (idempotencyKeys != null) {
+            idempotencyKeys.release(idempotencyKey, orderId);
+        }
+    }
+
+    /**
+     * Pobranie jednej strony listy zamówień uporządkowanej według daty utworzenia (i identyfikatora w przypadku
+     * zamówień złożonych w tej samej chwili).
+     *
+     * @param after kursor zwrócony wraz z poprzednią stroną lub null dla pierwszej strony
+     * @param limit liczba zamówień na stronie
+     * @return strona listy zamówień
+     */
+    public Page<Order> findPage(String after, int limit) {
+        TypedQuery<Order> query;
+        if (after == null) {
+            query = em.createQuery("SELECT o FROM Order o ORDER BY o.creationDate, o.id", Order.class);
+        } else {
+            String[] key = Cursors.decode(after, 2);
+            query = em.createQuery("SELECT o FROM Order o "
+                    + "WHERE o.creationDate > :date OR (o.creationDate = :date AND o.id > :id) "
+                    + "ORDER BY o.creationDate, o.id", Order.class)
+                    .setParameter("date", Cursors.toDate(key[0]), TemporalType.TIMESTAMP)
+                    .setParameter("id", Cursors.toUuid(key[1]));
+        }
+
+        List<Order> rows = query.setMaxResults(pageSize(limit) + 1).getResultList();
+        return Page.of(rows, limit, order -> Cursors.encode(order.getCreationDate().getTime(), order.getId()));
+    }
+
+    /**
+     * Przekazanie wszystkich zamówień (w kolejności składania) do funkcji sink bez budowania listy w pamięci.
+     * <p>
+     * Zamówienia są odczytywane kursorem bazy danych (ScrollableResults) przesuwanym tylko do przodu, a kontekst
+     * trwałości jest czyszczony co bookshop.orders.export.chunk-size zamówień, więc zużycie pamięci nie zależy od
+     * liczby zamówień. Funkcja sink jest wywoływana w ramach otwartej transakcji - może więc odczytywać leniwie
+     * ładowane pola zamówienia, ale nie powinna przechowywać referencji do przekazanych obiektów.
+     *
+     * @param sink funkcja wywoływana dla każdego zamówienia
+     * @return liczba przekazanych zamówień
+     */
+    @Transactional(readOnly = true)
+    public long exportAll(Consumer<Order> sink) {
+        Session session = em.unwrap(Session.class);
+        ScrollableResults results = session.createQuery("SELECT o FROM Order o ORDER BY o.creationDate, o.id")
+                .setReadOnly(true)
+                .setFetchSize(exportChunkSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+
+        long count = 0;
+        try {
+            while (results.next()) {
+                sink.accept((Order) results.get(0));
+
+                if (++count % exportChunkSize == 0) {
+                    session.clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
+        return count;
     }
 
     /**
      * Złożenie zamówienia w sklepie.
      * <p>
-     * Zamówienie jest akceptowane, jeśli wszystkie objęte nim produkty są dostępne (przynajmniej 1 sztuka). W wyniku
-     * złożenia zamówienia liczba dostępnych sztuk produktów jest zmniejszana o jeden. Metoda działa w sposób
+     * Zamówienie jest akceptowane, jeśli wszystkie objęte nim produkty są dostępne w zamówionej liczbie sztuk. W wyniku
+     * złożenia zamówienia liczba dostępnych sztuk produktów jest zmniejszana o liczbę zamówionych sztuk - raz dla
+     * każdej pozycji. Pozycje dotyczące tej samej książki (również z listy books) są łączone. Metoda działa w sposób
      * transakcyjny - zamówienie jest albo akceptowane w całości albo odrzucane w całości. W razie braku produktu
      * wyrzucany jest wyjątek OutOfStockException.
      *
@@ -45,34 +287,281 @@ public class OrdersService extends EntityService<Order> {
      */
     @Transactional
     public void placeOrder(Order order) {
-        validateOrder(order);
-        
+        try {
+            metrics.time("orders.place", () -> {
+                //wszystkie książki z zamówienia są pobierane jednym zapytaniem - walidacja i aktualizacja stanów
+                //magazynowych korzystają z tej samej mapy, niezależnie od liczby pozycji w zamówieniu
+                Map<UUID, Book> books = metrics.time("orders.place.validate", () -> {
+                    Map<UUID, Book> found = findBooks(order);
+                    validateOrder(order, found);
+                    return found;
+                });
+
+                metrics.time("orders.place.stock", () -> updateStock(order, books));
+
+                //zapisywana jest jedna pozycja na książkę, niezależnie od liczby zamówionych sztuk, wraz z ceną
+                //z chwili zakupu - późniejsza zmiana ceny książki nie zmienia wartości zamówienia
+                List<OrderLine> lines = new ArrayList<>();
+                countBooks(order).forEach((bookId, quantity) ->
+                        lines.add(new OrderLine(bookId, quantity, books.get(bookId).getCost())));
+                order.getLines().clear();
+                order.getLines().addAll(lines);
+                order.getBooks().clear();
+                order.setTotalValue(getTotalValue(order, books));
+
+                //składane zamówienie jest zawsze nowe - nie trzeba sprawdzać, czy jego identyfikator już istnieje
+                //(ponowne użycie identyfikatora kończy się błędem klucza głównego zamiast nadpisania zamówienia)
+                insert(order);
+
+                if (order.getIdempotencyKey() != null && idempotencyKeys != null) {
+                    idempotencyKeys.put(order.getIdempotencyKey(), order.getId());
+                }
+
+                if (eventPublisher != null) {
+                    eventPublisher.publishEvent(new OrderPlacedEvent(order));
+                }
+            });
+        } catch (ValidationException e) {
+            metrics.increment("orders.rejected." + ServiceMetrics.label(e.getMessage()));
+            throw e;
+        }
+    }
+
+    /**
+     * Zmniejszenie stanów magazynowych książek objętych zamówieniem - w sposób zależny od trybu StockMode.
+     *
+     * @param order zamówienie do przetworzenia
+     * @param books książki objęte zamówieniem
+     */
+    void updateStock(Order order, Map<UUID, Book> books) {
+        if (stockMode == StockMode.CONDITIONAL_UPDATE) {
+            reserveBooks(order);
+        } else if (stockMode == StockMode.LEDGER) {
+            if (!inventoryLedger.reserve(countBooks(order)))
+                throw new ValidationException("Book out of stock");
+        } else {
+            for (Map.Entry<UUID, Integer> entry : countBooks(order).entrySet()) {
+                Book book = books.get(entry.getKey());
+
+                validateBookAvailable(book, entry.getValue());
+                book.setAmount(book.getAmount() - entry.getValue());
+            }
+        }
+
+        //w trybie LEDGER stany w tabeli Book zmienia dopiero zapis w tle (InventoryLedger.flush)
+        if (stockMode != StockMode.LEDGER && eventPublisher != null) {
+            eventPublisher.publishEvent(new StockChangedEvent(books.keySet()));
+        }
+    }
+
+    /**
+     * Zmniejszenie stanów magazynowych za pomocą warunkowych zapytań UPDATE - jedno zapytanie na każdą książkę.
+     * <p>
+     * Zapytanie nie zmienia wiersza, jeśli w magazynie jest mniej sztuk niż zamówiono - brak zmienionych wierszy
+     * oznacza brak towaru. Książki są aktualizowane w stałej kolejności identyfikatorów, aby równoległe zamówienia
+     * obejmujące te same tytuły nie blokowały się nawzajem.
+     *
+     * @param order zamówienie do przetworzenia
+     */
+    void reserveBooks(Order order) {
+        for (Map.Entry<UUID, Integer> entry : countBooks(order).entrySet()) {
+            int updated = StockUpdates.withdraw(em, Book.RESERVE, entry.getKey(), entry.getValue());
+
+            if (updated == 0)
+                throw new ValidationException("Book out of stock");
+        }
+    }
+
+    /**
+     * Zsumowanie pozycji zamówienia (lines) oraz książek z listy books (każda oznacza jedną sztukę).
+     *
+     * @param order zamówienie
+     * @return liczba zamówionych sztuk każdej z książek, uporządkowana według identyfikatorów
+     */
+    Map<UUID, Integer> countBooks(Order order) {
+        Map<UUID, Integer> quantities = new TreeMap<>();
+        for (OrderLine line : order.getLines()) {
+            if (line.getBookId() == null)
+                throw new ValidationException("Book not found");
+            if (line.getQuantity() < 1 || !addQuantity(quantities, line.getBookId(), line.getQuantity()))
+                throw new ValidationException("Invalid quantity");
+        }
         for (Book bookStub : order.getBooks()) {
-            Book book = em.find(Book.class, bookStub.getId());
-            
-            validateBookAvailable(book);
-            book.setAmount(book.getAmount() - 1);
+            if (bookStub.getId() == null)
+                throw new ValidationException("Book not found");
+            if (!addQuantity(quantities, bookStub.getId(), 1))
+                throw new ValidationException("Invalid quantity");
         }
-        save(order);
+        return quantities;
     }
-    
+
+    /**
+     * Dodanie liczby sztuk książki do sumy jej pozycji w zamówieniu.
+     *
+     * @return false, jeśli suma przekracza zakres typu int (suma nie jest wtedy zmieniana)
+     */
+    private static boolean addQuantity(Map<UUID, Integer> quantities, UUID bookId, int quantity) {
+        int current = quantities.getOrDefault(bookId, 0);
+        if (current > Integer.MAX_VALUE - quantity) {
+            return false;
+        }
+        quantities.put(bookId, current + quantity);
+        return true;
+    }
+
+    /**
+     * Pobranie wszystkich książek objętych zamówieniem - z pamięci podręcznej drugiego poziomu, a pozostałych za
+     * pomocą pojedynczego zapytania.
+     *
+     * @param order zamówienie
+     * @return mapa książek odnalezionych w bazie danych, kluczem jest identyfikator książki
+     */
+    public Map<UUID, Book> findBooks(Order order) {
+        //w trybie COLLECT_ALL nieprawidłowe pozycje są zgłaszane dopiero przez walidację, razem z pozostałymi błędami
+        Set<UUID> requested;
+        if (validationMode == ValidationMode.COLLECT_ALL) {
+            requested = new TreeSet<>();
+            order.getLines().stream().map(OrderLine::getBookId).filter(Objects::nonNull).forEach(requested::add);
+            order.getBooks().stream().map(Book::getId).filter(Objects::nonNull).forEach(requested::add);
+        } else {
+            requested = countBooks(order).keySet();
+        }
+
+        Map<UUID, Book> books = new HashMap<>();
+        if (requested.isEmpty()) {
+            return books;
+        }
+
+        Cache cache = em.getEntityManagerFactory().getCache();
+        Set<UUID> ids = new HashSet<>();
+        for (UUID id : requested) {
+            if (cache.contains(Book.class, id)) {
+                Book book = em.find(Book.class, id);
+                if (book != null) {
+                    books.put(id, book);
+                    continue;
+                }
+            }
+            ids.add(id);
+        }
+
+        if (ids.isEmpty()) {
+            return books;
+        }
+
+        TypedQuery<Book> query = em.createNamedQuery(Book.FIND_BY_IDS, Book.class).setParameter("ids", ids);
+        for (Book book : metrics.time("orders.find-books", query::getResultList)) {
+            books.put(book.getId(), book);
+        }
+        return books;
+    }
+
+    /**
+     * Wartość zamówienia - zapamiętana przy jego złożeniu lub, dla zamówień jeszcze niezłożonych, obliczona na
+     * podstawie aktualnych cen książek.
+     *
+     * @param order zamówienie
+     * @return wartość zamówienia
+     */
     public int getTotalValue(Order order) {
-        int cost = 0;
-        
-        for(Book b: order.getBooks()) {
-            Book book = em.find(Book.class, b.getId());
-            cost += book.getCost();
+        if (order.getTotalValue() != null) {
+            return order.getTotalValue();
         }
-        
-        return cost;
+        return metrics.time("orders.total-value", () -> getTotalValue(order, findBooks(order)));
+    }
+
+    public int getTotalValue(Order order, Map<UUID, Book> books) {
+        long cost = 0;
+
+        for (Map.Entry<UUID, Integer> entry : countBooks(order).entrySet()) {
+            Book book = books.get(entry.getKey());
+            cost += (long) book.getCost() * entry.getValue();
+        }
+
+        //wartość zamówienia jest zapisywana w kolumnie typu INTEGER
+        if (cost > Integer.MAX_VALUE)
+            throw new ValidationException("Order too valuable");
+        return (int) cost;
     }
 
     public void validateOrder(Order order) {
+        metrics.time("orders.validate", () -> validateOrder(order, findBooks(order)));
+    }
+
+    public void validateOrder(Order order, Map<UUID, Book> books) {
+        if (validationMode == ValidationMode.COLLECT_ALL) {
+            List<OrderValidationException.Violation> violations = findViolations(order, books);
+            if (!violations.isEmpty())
+                throw new OrderValidationException(violations);
+            return;
+        }
+
         validateOrderNotEmpty(order);
-        
+
+        for (UUID bookId : countBooks(order).keySet()) {
+            validateBook(books.get(bookId));
+        }
+    }
+
+    /**
+     * Sprawdzenie wszystkich pozycji zamówienia w jednym przebiegu - bez przerywania przy pierwszym błędzie.
+     * <p>
+     * Książki są sprawdzane na podstawie wcześniej pobranej mapy, więc walidacja nie wykonuje zapytań do bazy danych.
+     * Jeśli zamówienie obejmuje co najmniej bookshop.orders.validation.parallel-threshold książek, są one sprawdzane
+     * równolegle (wspólna pula wątków ForkJoinPool). Sprawdzana jest również dostępność zamówionej liczby sztuk -
+     * ostateczną decyzję podejmuje jednak zmniejszenie stanów magazynowych w trakcie składania zamówienia.
+     *
+     * @param order zamówienie
+     * @param books książki objęte zamówieniem, kluczem jest identyfikator książki
+     * @return błędy dotyczące całego zamówienia i poszczególnych książek (w kolejności identyfikatorów książek)
+     */
+    public List<OrderValidationException.Violation> findViolations(Order order, Map<UUID, Book> books) {
+        List<OrderValidationException.Violation> violations = new ArrayList<>();
+        Map<UUID, Integer> quantities = new TreeMap<>();
+        //książki, których łączna liczba sztuk przekracza zakres typu int - nie są dalej sprawdzane
+        Set<UUID> overflown = new HashSet<>();
+
+        if (order.getLines().isEmpty() && order.getBooks().isEmpty()) {
+            violations.add(new OrderValidationException.Violation(null, "Empty order"));
+        }
+        for (OrderLine line : order.getLines()) {
+            if (line.getBookId() == null) {
+                violations.add(new OrderValidationException.Violation(null, "Book not found"));
+            } else if (line.getQuantity() < 1) {
+                violations.add(new OrderValidationException.Violation(line.getBookId(), "Invalid quantity"));
+            } else if (!overflown.contains(line.getBookId())
+                    && !addQuantity(quantities, line.getBookId(), line.getQuantity())) {
+                overflown.add(line.getBookId());
+                violations.add(new OrderValidationException.Violation(line.getBookId(), "Invalid quantity"));
+            }
+        }
         for (Book bookStub : order.getBooks()) {
-            Book book = em.find(Book.class, bookStub.getId());
+            if (bookStub.getId() == null) {
+                violations.add(new OrderValidationException.Violation(null, "Book not found"));
+            } else if (!overflown.contains(bookStub.getId()) && !addQuantity(quantities, bookStub.getId(), 1)) {
+                overflown.add(bookStub.getId());
+                violations.add(new OrderValidationException.Violation(bookStub.getId(), "Invalid quantity"));
+            }
+        }
+        quantities.keySet().removeAll(overflown);
+
+        Stream<Map.Entry<UUID, Integer>> entries = quantities.size() >= parallelValidationThreshold
+                ? quantities.entrySet().parallelStream()
+                : quantities.entrySet().stream();
+        //strumień równoległy zachowuje kolejność elementów w wyniku
+        entries.map(entry -> findViolation(entry.getKey(), books.get(entry.getKey()), entry.getValue()))
+                .filter(Objects::nonNull)
+                .forEachOrdered(violations::add);
+        return violations;
+    }
+
+    private OrderValidationException.Violation findViolation(UUID bookId, Book book, int quantity) {
+        try {
             validateBook(book);
+            validateBookAvailable(book, quantity);
+            return null;
+        } catch (ValidationException e) {
+            return new OrderValidationException.Violation(bookId, e.getMessage());
         }
     }
     
@@ -82,12 +571,13 @@ public class OrdersService extends EntityService<Order> {
     }
     
     public void validateOrderNotEmpty(Order order) {
-        if(order.getBooks().isEmpty())
+        if(order.getLines().isEmpty() && order.getBooks().isEmpty())
             throw new ValidationException("Empty order");
     }
     
     public void validateBook(Book book) {
-        validateBookNotNull(book);
+        if(book == null)
+            throw new ValidationException("Book not found");
         validateBookCostNotNull(book);
         validateBookAmountNotNull(book);
     }
@@ -109,7 +599,11 @@ public class OrdersService extends EntityService<Order> {
     }
     
     public void validateBookAvailable(Book book) {
-        if (book.getAmount() < 1)
+        validateBookAvailable(book, 1);
+    }
+
+    public void validateBookAvailable(Book book, int quantity) {
+        if (book.getAmount() < quantity)
             throw new ValidationException("Book out of stock");
     }
 }
@@ -0,0 +1,49 @@
+package net.stawrul.services;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Pojedyncza strona wyników stronicowania opartego na kluczu (ang. keyset pagination).
+ *
+ * @param <T> typ elementów strony
+ */
+public class Page<T> {
+
+    /**
+     * Elementy należące do strony.
+     */
+    @Getter
+    private final List<T> items;
+
+    /**
+     * Kursor wskazujący na następną stronę lub null, jeśli jest to ostatnia strona.
+     */
+    @Getter
+    private final String next;
+
+    public Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * Utworzenie strony na podstawie wyniku zapytania pobierającego o jeden element więcej niż rozmiar strony.
+     *
+     * @param rows wynik zapytania (co najwyżej limit + 1 elementów)
+     * @param limit rozmiar strony
+     * @param cursor funkcja wyznaczająca kursor na podstawie ostatniego elementu strony
+     * @param <T> typ elementów strony
+     * @return strona wyników
+     */
+    static <T> Page<T> of(List<T> rows, int limit, Function<T, String> cursor) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+
+        List<T> items = rows.subList(0, limit);
+        return new Page<>(items, cursor.apply(items.get(limit - 1)));
+    }
+}
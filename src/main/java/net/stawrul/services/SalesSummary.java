@@ -0,0 +1,183 @@
+package net.stawrul.services;
+
+import net.stawrul.model.BookSales;
+import net.stawrul.model.DailySales;
+import net.stawrul.model.Order;
+import net.stawrul.services.events.OrderPlacedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.sql.Date;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Zestawienie sprzedaży - dla każdej książki i dla każdego dnia - aktualizowane przyrostowo.
+ * <p>
+ * Zamówienia są doliczane do sum w tabelach book_sales i daily_sales w tle, co bookshop.sales.flush-interval-ms
+ * milisekund - jednym zapytaniem UPDATE na książkę i dzień. Dzięki temu zamówienia nie czekają na blokadę wiersza
+ * bieżącego dnia, a odczyt zestawienia nie wymaga przeglądania zamówień. Zestawienie jest opóźnione względem zamówień
+ * o czas między zapisami.
+ * <p>
+ * Sumy są obliczane z pozycji zamówień zapisanych w bazie danych (tabela order_lines), a zamówienia są oznaczane jako
+ * doliczone (kolumna orders.summarized) w tej samej transakcji, w której zwiększane są sumy. Zamówienie zatwierdzone
+ * przed awarią aplikacji, ale jeszcze niedoliczone, zostanie więc doliczone po jej ponownym uruchomieniu - dokładnie
+ * raz.
+ */
+@Service
+@EnableScheduling
+public class SalesSummary {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesSummary.class);
+
+    //maksymalna liczba zamówień doliczanych w jednej transakcji
+    static final int BATCH_SIZE = 500;
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+
+    //czy mogą istnieć niedoliczone zamówienia - przy starcie aplikacji zawsze (zamówienia sprzed awarii), później
+    //po zatwierdzeniu każdego zamówienia; pozwala pominąć zapytanie o zamówienia, gdy żadne nie zostało złożone
+    private final AtomicBoolean pending = new AtomicBoolean(true);
+
+    public SalesSummary(EntityManager em, PlatformTransactionManager transactionManager) {
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        pending.set(true);
+    }
+
+    /**
+     * Doliczenie do sum wszystkich zatwierdzonych, jeszcze niedoliczonych zamówień.
+     * <p>
+     * Wywoływane cyklicznie co bookshop.sales.flush-interval-ms milisekund (również pierwszy raz po uruchomieniu
+     * aplikacji) oraz przy zamykaniu aplikacji. W razie błędu
+     * transakcja jest wycofywana, a zamówienia zostaną doliczone przy następnej próbie.
+     */
+    @Scheduled(fixedDelayString = "${bookshop.sales.flush-interval-ms:1000}",
+            initialDelayString = "${bookshop.sales.flush-interval-ms:1000}")
+    @PreDestroy
+    public synchronized void flush() {
+        if (!pending.getAndSet(false)) {
+            return;
+        }
+
+        try {
+            while (transactionTemplate.execute(status -> write()) == BATCH_SIZE) {
+                //kolejna porcja zamówień
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not write sales, will retry", e);
+            pending.set(true);
+        }
+    }
+
+    //doliczenie jednej porcji zamówień - zwraca liczbę doliczonych zamówień
+    private int write() {
+        List<UUID> orderIds = em.createNamedQuery(Order.FIND_UNSUMMARIZED, UUID.class)
+                .setMaxResults(BATCH_SIZE)
+                .getResultList();
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+
+        //zamówienia są oznaczane przed odczytem pozycji - zapis blokuje ich wiersze, więc zamówienia doliczane
+        //równolegle (np. przez inną instancję aplikacji) nie zostaną policzone dwukrotnie
+        int marked = em.createNamedQuery(Order.MARK_SUMMARIZED)
+                .setParameter("ids", orderIds)
+                .executeUpdate();
+        if (marked != orderIds.size()) {
+            throw new IllegalStateException("Orders were summarized concurrently");
+        }
+
+        //sumy: {liczba sztuk, przychód} oraz {liczba zamówień, liczba sztuk, przychód}
+        Map<UUID, long[]> books = new TreeMap<>();
+        Map<Date, long[]> days = new TreeMap<>();
+        Set<UUID> counted = new HashSet<>();
+
+        List<Object[]> lines = em.createNamedQuery(Order.FIND_LINES, Object[].class)
+                .setParameter("ids", orderIds)
+                .getResultList();
+        for (Object[] row : lines) {
+            UUID bookId = (UUID) row[2];
+            int quantity = (Integer) row[3];
+            long revenue = row[4] != null ? (long) (Integer) row[4] * quantity : 0;
+
+            add(books.computeIfAbsent(bookId, id -> new long[2]), quantity, revenue);
+            //zamówienie jest liczone raz, przy pierwszej pozycji
+            add(days.computeIfAbsent(dayOf((java.util.Date) row[1]), d -> new long[3]),
+                    counted.add((UUID) row[0]) ? 1 : 0, quantity, revenue);
+        }
+
+        books.forEach((bookId, sums) -> {
+            int updated = em.createNamedQuery(BookSales.ADD)
+                    .setParameter("bookId", bookId)
+                    .setParameter("copies", sums[0])
+                    .setParameter("revenue", sums[1])
+                    .executeUpdate();
+            if (updated == 0) {
+                em.persist(new BookSales(bookId, sums[0], sums[1]));
+            }
+        });
+        days.forEach((day, sums) -> {
+            int updated = em.createNamedQuery(DailySales.ADD)
+                    .setParameter("day", day)
+                    .setParameter("orders", sums[0])
+                    .setParameter("copies", sums[1])
+                    .setParameter("revenue", sums[2])
+                    .executeUpdate();
+            if (updated == 0) {
+                em.persist(new DailySales(day, sums[0], sums[1], sums[2]));
+            }
+        });
+        return orderIds.size();
+    }
+
+    /**
+     * @param limit maksymalna liczba książek
+     * @return książki o największym przychodzie ze sprzedaży
+     */
+    public List<BookSales> topBooks(int limit) {
+        return em.createNamedQuery(BookSales.FIND_TOP, BookSales.class)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * @param limit maksymalna liczba dni
+     * @return sprzedaż w ostatnich dniach (od najnowszego), pomijając dni bez zamówień
+     */
+    public List<DailySales> recentDays(int limit) {
+        return em.createNamedQuery(DailySales.FIND_RECENT, DailySales.class)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    //dzień złożenia zamówienia w strefie czasowej serwera
+    private static Date dayOf(java.util.Date creationDate) {
+        return Date.valueOf(creationDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+    }
+
+    private static void add(long[] sums, long... values) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += values[i];
+        }
+    }
+}
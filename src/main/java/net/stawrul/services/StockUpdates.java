@@ -0,0 +1,62 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Book;
+import org.hibernate.SQLQuery;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.UUID;
+
+/**
+ * Zmniejszanie stanów magazynowych zapytaniami SQL (Book.RESERVE, Book.WITHDRAW) z usuwaniem z pamięci podręcznej
+ * drugiego poziomu tylko zmienionych książek.
+ * <p>
+ * Zapytanie UPDATE języka HQL i zapytanie SQL bez przestrzeni zapytań (ang. query space) usuwają cały region
+ * net.stawrul.model.Book i unieważniają wynik zapytania Book.FIND_ALL - przy każdym zamówieniu. Zapytania są więc
+ * powiązane z osobną przestrzenią zapytań, której nie używa żadna klasa encyjna, a zmieniona książka jest usuwana
+ * z pamięci podręcznej po zatwierdzeniu transakcji. Wynik zapytania Book.FIND_ALL (identyfikatory książek) pozostaje
+ * aktualny, bo zmiana stanu nie dodaje ani nie usuwa książek.
+ */
+final class StockUpdates {
+
+    //przestrzeń zapytań zmieniających stany magazynowe - różna od przestrzeni book klasy encyjnej Book
+    static final String QUERY_SPACE = "book_stock";
+
+    private StockUpdates() {}
+
+    /**
+     * Wykonanie zapytania zmniejszającego stan magazynowy książki w ramach bieżącej transakcji.
+     *
+     * @param em        EntityManager bieżącej transakcji
+     * @param queryName nazwa zapytania (Book.RESERVE lub Book.WITHDRAW)
+     * @param id        identyfikator książki
+     * @param n         liczba sztuk
+     * @return liczba zmienionych wierszy
+     */
+    static int withdraw(EntityManager em, String queryName, UUID id, int n) {
+        Query query = em.createNamedQuery(queryName)
+                .setParameter("id", id)
+                .setParameter("n", n);
+        query.unwrap(SQLQuery.class).addSynchronizedQuerySpace(QUERY_SPACE);
+
+        int updated = query.executeUpdate();
+        if (updated > 0) {
+            evictAfterCommit(em.getEntityManagerFactory().getCache(), id);
+        }
+        return updated;
+    }
+
+    //usunięcie przed wywołaniem obiektów nasłuchujących zdarzeń po zatwierdzeniu transakcji (np. CatalogueVersion),
+    //aby odpowiedź oznaczona nowym znacznikiem zawierała nowy stan
+    private static void evictAfterCommit(Cache cache, UUID id) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                cache.evict(Book.class, id);
+            }
+        });
+    }
+}
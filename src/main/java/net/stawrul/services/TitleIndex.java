@@ -0,0 +1,91 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.events.BooksSavedEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Indeks tytułów książek przechowywany w pamięci - uporządkowana mapa z tytułu (Book.titleKey) na identyfikatory
+ * książek. Wyszukiwanie po początku tytułu przegląda tylko pasujący fragment mapy, bez zapytania do bazy danych.
+ * <p>
+ * Indeks jest wczytywany przy starcie aplikacji i aktualizowany po zapisie książek (zdarzenie BooksSavedEvent).
+ * Komponent jest tworzony tylko wtedy, gdy bookshop.books.title-index.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "bookshop.books.title-index.enabled", havingValue = "true")
+public class TitleIndex {
+
+    private final EntityManager em;
+
+    private final NavigableMap<String, Set<UUID>> index = new ConcurrentSkipListMap<>();
+
+    //aktualny klucz każdej książki - potrzebny do usunięcia starego wpisu po zmianie tytułu
+    private final Map<UUID, String> keys = new ConcurrentHashMap<>();
+
+    public TitleIndex(EntityManager em) {
+        this.em = em;
+    }
+
+    @PostConstruct
+    public void load() {
+        for (Object[] row : em.createNamedQuery(Book.FIND_TITLES, Object[].class).getResultList()) {
+            put((UUID) row[0], Book.titleKey((String) row[1]));
+        }
+    }
+
+    /**
+     * Wyszukanie książek, których tytuł zaczyna się od podanego ciągu znaków (bez rozróżniania wielkości liter).
+     *
+     * @param prefix początek tytułu
+     * @param max maksymalna liczba zwracanych identyfikatorów
+     * @return identyfikatory książek lub null, jeśli pasujących książek jest więcej niż max
+     */
+    public List<UUID> findByPrefix(String prefix, int max) {
+        String key = Book.titleKey(prefix);
+        List<UUID> ids = new ArrayList<>();
+        for (Set<UUID> matching : index.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+            ids.addAll(matching);
+            if (ids.size() > max) {
+                return null;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return liczba książek w indeksie
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksSaved(BooksSavedEvent event) {
+        for (Book book : event.getBooks()) {
+            put(book.getId(), Book.titleKey(book.getTitle()));
+        }
+    }
+
+    private synchronized void put(UUID id, String key) {
+        String previous = key != null ? keys.put(id, key) : keys.remove(id);
+        if (previous != null) {
+            index.computeIfPresent(previous, (k, ids) -> ids.remove(id) && ids.isEmpty() ? null : ids);
+        }
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+}
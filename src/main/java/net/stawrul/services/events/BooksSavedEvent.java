@@ -0,0 +1,19 @@
+package net.stawrul.services.events;
+
+import lombok.Getter;
+import net.stawrul.model.Book;
+
+import java.util.Collection;
+
+/**
+ * Zdarzenie publikowane po zapisaniu danych książek (dodanie nowych lub aktualizacja istniejących).
+ */
+public class BooksSavedEvent {
+
+    @Getter
+    private final Collection<Book> books;
+
+    public BooksSavedEvent(Collection<Book> books) {
+        this.books = books;
+    }
+}
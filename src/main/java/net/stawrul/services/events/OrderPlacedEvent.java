@@ -0,0 +1,17 @@
+package net.stawrul.services.events;
+
+import lombok.Getter;
+import net.stawrul.model.Order;
+
+/**
+ * Zdarzenie publikowane po zapisaniu nowego zamówienia (pozycje zamówienia zawierają ceny z chwili zakupu).
+ */
+public class OrderPlacedEvent {
+
+    @Getter
+    private final Order order;
+
+    public OrderPlacedEvent(Order order) {
+        this.order = order;
+    }
+}
@@ -0,0 +1,19 @@
+package net.stawrul.services.events;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Zdarzenie publikowane po zmianie stanów magazynowych książek w bazie danych (np. w wyniku złożenia zamówienia).
+ */
+public class StockChangedEvent {
+
+    @Getter
+    private final Collection<UUID> bookIds;
+
+    public StockChangedEvent(Collection<UUID> bookIds) {
+        this.bookIds = bookIds;
+    }
+}
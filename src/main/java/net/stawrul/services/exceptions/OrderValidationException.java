@@ -0,0 +1,41 @@
+package net.stawrul.services.exceptions;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Wyjątek zawierający wszystkie błędy wykryte podczas walidacji zamówienia (tryb ValidationMode.COLLECT_ALL) -
+ * komunikat wyjątku jest komunikatem pierwszego z nich.
+ */
+public class OrderValidationException extends ValidationException {
+
+    /**
+     * Błąd dotyczący całego zamówienia (bookId == null) lub jednej z zamówionych książek.
+     */
+    @Getter
+    public static class Violation {
+
+        private final UUID bookId;
+        private final String message;
+
+        public Violation(UUID bookId, String message) {
+            this.bookId = bookId;
+            this.message = message;
+        }
+    }
+
+    @Getter
+    private final List<Violation> violations;
+
+    /**
+     * @param violations niepusta lista błędów
+     */
+    public OrderValidationException(List<Violation> violations) {
+        super(violations.get(0).getMessage());
+        this.violations = Collections.unmodifiableList(new ArrayList<>(violations));
+    }
+}
@@ -0,0 +1,77 @@
+package net.stawrul.utils;
+
+import net.stawrul.services.exceptions.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Kodowanie kursorów stronicowania.
+ * <p>
+ * Kursor jest nieprzezroczystym dla klienta ciągiem znaków (Base64 w wariancie URL) zawierającym wartości klucza
+ * ostatniego elementu strony.
+ */
+public final class Cursors {
+
+    private static final String SEPARATOR = "|";
+
+    private Cursors() {}
+
+    public static String encode(Object... values) {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (sb.length() > 0) {
+                sb.append(SEPARATOR);
+            }
+            sb.append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor kursor utworzony metodą encode
+     * @param size oczekiwana liczba wartości
+     * @return wartości zapisane w kursorze
+     * @throws ValidationException jeśli kursor jest nieprawidłowy
+     */
+    public static String[] decode(String cursor, int size) {
+        try {
+            String[] values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, -1);
+            if (values.length == size) {
+                return values;
+            }
+        } catch (IllegalArgumentException e) {
+            //nieprawidłowe kodowanie Base64 - obsłużone poniżej
+        }
+        throw new ValidationException("Invalid page cursor");
+    }
+
+    /**
+     * @param value identyfikator zapisany w kursorze
+     * @return identyfikator
+     * @throws ValidationException jeśli wartość nie jest identyfikatorem UUID
+     */
+    public static UUID toUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid page cursor");
+        }
+    }
+
+    /**
+     * @param value znacznik czasu zapisany w kursorze (liczba milisekund)
+     * @return data
+     * @throws ValidationException jeśli wartość nie jest liczbą
+     */
+    public static Date toDate(String value) {
+        try {
+            return new Date(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid page cursor");
+        }
+    }
+}
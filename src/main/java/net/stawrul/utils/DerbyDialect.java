@@ -0,0 +1,32 @@
+package net.stawrul.utils;
+
+import org.hibernate.dialect.DerbyTenSevenDialect;
+import org.hibernate.dialect.unique.DefaultUniqueDelegate;
+import org.hibernate.dialect.unique.UniqueDelegate;
+
+import java.sql.Types;
+
+/**
+ * Dialekt bazy Derby tworzący ograniczenia unikalności (ALTER TABLE ... ADD CONSTRAINT ... UNIQUE) również dla kolumn
+ * dopuszczających wartość NULL i zapisujący krótkie wartości binarne (identyfikatory UUID, zob. Uuids) w kolumnach
+ * o stałej długości.
+ * <p>
+ * Dialekt DerbyTenSevenDialect (podobnie jak dialekt DB2, z którego dziedziczy) zastępuje je unikalnym indeksem,
+ * który w Derby traktuje wartości NULL jako równe - np. kolumna Order.idempotencyKey mogłaby wtedy zawierać tylko
+ * jedno zamówienie bez klucza. Ograniczenie UNIQUE w Derby (od wersji 10.4) dopuszcza wiele wartości NULL.
+ */
+public class DerbyDialect extends DerbyTenSevenDialect {
+
+    private final UniqueDelegate uniqueDelegate = new DefaultUniqueDelegate(this);
+
+    public DerbyDialect() {
+        //CHAR(16) FOR BIT DATA zamiast domyślnego VARCHAR(255) FOR BIT DATA - wiersze i klucze indeksów nie zawierają
+        //długości wartości
+        registerColumnType(Types.VARBINARY, Uuids.LENGTH, "char($l) for bit data");
+    }
+
+    @Override
+    public UniqueDelegate getUniqueDelegate() {
+        return uniqueDelegate;
+    }
+}
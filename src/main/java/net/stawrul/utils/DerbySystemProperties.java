@@ -0,0 +1,42 @@
+package net.stawrul.utils;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+
+/**
+ * Przekazanie ustawień wbudowanej bazy Derby (właściwości derby.*, np. z pliku application-embedded.properties)
+ * do właściwości systemowych JVM - Derby uruchomiona w procesie aplikacji (sterownik EmbeddedDriver) odczytuje je
+ * przy starcie silnika i otwieraniu bazy danych, czyli przy pierwszym połączeniu.
+ * <p>
+ * Właściwości systemowe ustawione wcześniej (np. parametrem -Dderby.storage.pageCacheSize=...) nie są zmieniane.
+ * Na serwer Derby, z którym aplikacja łączy się przez sieć (ClientDriver40), ustawienia nie mają wpływu - jego
+ * konfiguracja znajduje się w pliku derby.properties serwera.
+ */
+public class DerbySystemProperties implements EnvironmentPostProcessor, Ordered {
+
+    private static final String PREFIX = "derby.";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        for (PropertySource<?> source : environment.getPropertySources()) {
+            if (!(source instanceof EnumerablePropertySource)) {
+                continue;
+            }
+            for (String name : ((EnumerablePropertySource<?>) source).getPropertyNames()) {
+                if (name.startsWith(PREFIX) && System.getProperty(name) == null) {
+                    System.setProperty(name, environment.getProperty(name));
+                }
+            }
+        }
+    }
+
+    //po wczytaniu plików application-<profil>.properties (ConfigFileApplicationListener)
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,43 @@
+package net.stawrul.utils;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Identyfikatory encji (książek i zamówień).
+ * <p>
+ * Identyfikatory są zapisywane w bazie danych jako 16 bajtów (kolumny CHAR(16) FOR BIT DATA, zob. DerbyDialect).
+ * Nowe identyfikatory zaczynają się od czasu utworzenia (układ UUID w wersji 7: 48 bitów czasu w milisekundach
+ * i 74 losowe bity), więc kolejne wiersze trafiają na koniec indeksu klucza głównego zamiast w losowe miejsca -
+ * zapis nie wymaga wczytywania i dzielenia stron indeksu w całej tabeli.
+ */
+public final class Uuids {
+
+    //Długość identyfikatora w bajtach
+    public static final int LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Uuids() {}
+
+    /**
+     * @return nowy identyfikator uporządkowany według czasu utworzenia (z dokładnością do milisekundy)
+     */
+    public static UUID timeOrdered() {
+        byte[] random = new byte[10];
+        RANDOM.nextBytes(random);
+
+        long msb = System.currentTimeMillis() << 16
+                | 0x7000
+                | (random[0] & 0x0FL) << 8
+                | random[1] & 0xFFL;
+        long lsb = 0;
+        for (int i = 2; i < random.length; i++) {
+            lsb = lsb << 8 | random[i] & 0xFFL;
+        }
+        //wariant IETF (dwa najstarsze bity 10)
+        lsb = lsb & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+
+        return new UUID(msb, lsb);
+    }
+}
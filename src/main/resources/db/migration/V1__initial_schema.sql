@@ -0,0 +1,32 @@
+-- Schemat bazy danych w postaci utworzonej przez Hibernate (spring.jpa.hibernate.ddl-auto=update) przed
+-- wprowadzeniem migracji - ksiazki, zamowienia i tabela zlaczenia orders_books (Order.books, @ManyToMany) z jednym
+-- wierszem na kazda zamowiona sztuke, bez klucza glownego. Identyfikatory zapisane jako VARCHAR(255) FOR BIT DATA.
+--
+-- Istniejace bazy danych, utworzone przez Hibernate, nie wykonuja tego skryptu - przy pierwszym uruchomieniu
+-- Flyway oznacza je jako baze w wersji 1 (flyway.baseline-on-migrate) i wykonuje tylko kolejne migracje, dlatego
+-- skrypt musi odpowiadac dokladnie schematowi tworzonemu przez Hibernate. Nazwy kluczy FK... sa nazwami
+-- generowanymi przez Hibernate.
+
+CREATE TABLE book (
+    id VARCHAR(255) FOR BIT DATA NOT NULL,
+    amount INTEGER,
+    cost INTEGER,
+    date TIMESTAMP,
+    oprawa VARCHAR(255),
+    title VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE orders (
+    id VARCHAR(255) FOR BIT DATA NOT NULL,
+    creation_date TIMESTAMP,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE orders_books (
+    order_id VARCHAR(255) FOR BIT DATA NOT NULL,
+    books_id VARCHAR(255) FOR BIT DATA NOT NULL
+);
+
+ALTER TABLE orders_books ADD CONSTRAINT FK5jfo1ob4ev0f1dtowoul3uo38 FOREIGN KEY (books_id) REFERENCES book;
+ALTER TABLE orders_books ADD CONSTRAINT FKol7arli7ptfejk3kwuo2n2mx3 FOREIGN KEY (order_id) REFERENCES orders;
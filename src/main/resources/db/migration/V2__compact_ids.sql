@@ -0,0 +1,40 @@
+-- Zamiana kolumn z identyfikatorami UUID zapisanymi jako VARCHAR(255) FOR BIT DATA na CHAR(16) FOR BIT DATA
+-- (identyfikatory tworzone przez klase Uuids) oraz utworzenie indeksu orders_creation_date_idx.
+--
+-- Derby nie pozwala zmienic typu kolumny, wiec kazda kolumna jest kopiowana do nowej kolumny, a klucze glowne i klucze
+-- obce tabeli orders_books odwolujace sie do tabel book i orders sa usuwane przed zmiana i tworzone ponownie -
+-- z tymi samymi nazwami.
+
+ALTER TABLE orders_books DROP CONSTRAINT FK5jfo1ob4ev0f1dtowoul3uo38;
+ALTER TABLE orders_books DROP CONSTRAINT FKol7arli7ptfejk3kwuo2n2mx3;
+
+ALTER TABLE book ADD COLUMN id_new CHAR(16) FOR BIT DATA;
+UPDATE book SET id_new = CAST(id AS CHAR(16) FOR BIT DATA);
+ALTER TABLE book DROP PRIMARY KEY;
+ALTER TABLE book DROP COLUMN id;
+RENAME COLUMN book.id_new TO id;
+ALTER TABLE book ALTER COLUMN id NOT NULL;
+ALTER TABLE book ADD PRIMARY KEY (id);
+
+ALTER TABLE orders ADD COLUMN id_new CHAR(16) FOR BIT DATA;
+UPDATE orders SET id_new = CAST(id AS CHAR(16) FOR BIT DATA);
+ALTER TABLE orders DROP PRIMARY KEY;
+ALTER TABLE orders DROP COLUMN id;
+RENAME COLUMN orders.id_new TO id;
+ALTER TABLE orders ALTER COLUMN id NOT NULL;
+ALTER TABLE orders ADD PRIMARY KEY (id);
+
+ALTER TABLE orders_books ADD COLUMN order_id_new CHAR(16) FOR BIT DATA;
+ALTER TABLE orders_books ADD COLUMN books_id_new CHAR(16) FOR BIT DATA;
+UPDATE orders_books SET order_id_new = CAST(order_id AS CHAR(16) FOR BIT DATA),
+                        books_id_new = CAST(books_id AS CHAR(16) FOR BIT DATA);
+ALTER TABLE orders_books DROP COLUMN order_id;
+ALTER TABLE orders_books DROP COLUMN books_id;
+RENAME COLUMN orders_books.order_id_new TO order_id;
+RENAME COLUMN orders_books.books_id_new TO books_id;
+ALTER TABLE orders_books ALTER COLUMN order_id NOT NULL;
+ALTER TABLE orders_books ALTER COLUMN books_id NOT NULL;
+
+ALTER TABLE orders_books ADD CONSTRAINT FK5jfo1ob4ev0f1dtowoul3uo38 FOREIGN KEY (books_id) REFERENCES book;
+ALTER TABLE orders_books ADD CONSTRAINT FKol7arli7ptfejk3kwuo2n2mx3 FOREIGN KEY (order_id) REFERENCES orders;
+CREATE INDEX orders_creation_date_idx ON orders (creation_date, id);
@@ -0,0 +1,15 @@
+-- Kolumny tabeli book dodane po wersji 1 i ich wartosci w ksiazkach zapisanych wczesniej:
+-- title_key - klucz wyszukiwania ksiazek po tytule (male litery),
+-- version - wersja do blokowania optymistycznego (ksiazki bez wersji nie moglyby zostac zaktualizowane),
+-- oraz indeksy kolumn, po ktorych wyszukiwane sa ksiazki.
+
+ALTER TABLE book ADD COLUMN title_key VARCHAR(255);
+ALTER TABLE book ADD COLUMN version BIGINT;
+
+UPDATE book SET title_key = LOWER(title) WHERE title IS NOT NULL;
+UPDATE book SET version = 0;
+
+CREATE INDEX book_title_key_idx ON book (title_key);
+CREATE INDEX book_oprawa_idx ON book (oprawa);
+CREATE INDEX book_cost_idx ON book (cost);
+CREATE INDEX book_date_idx ON book (date);
@@ -0,0 +1,31 @@
+-- Pozycje zamowien (order_lines) zamiast tabeli zlaczenia orders_books oraz kolumny tabeli orders:
+-- idempotency_key - klucz ponawianego zadania zlozenia zamowienia (unikalny),
+-- total_value - wartosc zamowienia z cen z chwili zakupu.
+--
+-- Wiersze orders_books (jeden na kazda zamowiona sztuke) sa zamieniane na pozycje z liczba sztuk. Wersja 1 nie
+-- zapisywala cen z chwili zakupu, wiec cena sztuki (unit_cost) i wartosc zamowienia sa obliczane z obecnej ceny
+-- ksiazki. Tabela orders_books jest usuwana - aplikacja korzysta tylko z order_lines. Nazwy kluczy UK_... i FK...
+-- sa nazwami generowanymi przez Hibernate.
+
+ALTER TABLE orders ADD COLUMN idempotency_key VARCHAR(255);
+ALTER TABLE orders ADD COLUMN total_value INTEGER;
+ALTER TABLE orders ADD CONSTRAINT UK_d1kkvl4hi9hp3peub1umk2xeo UNIQUE (idempotency_key);
+
+CREATE TABLE order_lines (
+    order_id CHAR(16) FOR BIT DATA NOT NULL,
+    book_id CHAR(16) FOR BIT DATA NOT NULL,
+    quantity INTEGER NOT NULL,
+    unit_cost INTEGER
+);
+
+ALTER TABLE order_lines ADD CONSTRAINT FK1smc0s578t2oih21yn9hw6usr FOREIGN KEY (order_id) REFERENCES orders;
+CREATE INDEX order_lines_book_idx ON order_lines (book_id);
+
+INSERT INTO order_lines (order_id, book_id, quantity, unit_cost)
+    SELECT ob.order_id, ob.books_id, COUNT(*), b.cost
+    FROM orders_books ob JOIN book b ON b.id = ob.books_id
+    GROUP BY ob.order_id, ob.books_id, b.cost;
+
+UPDATE orders SET total_value = (SELECT SUM(l.quantity * l.unit_cost) FROM order_lines l WHERE l.order_id = orders.id);
+
+DROP TABLE orders_books;
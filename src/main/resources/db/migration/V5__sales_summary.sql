@@ -0,0 +1,24 @@
+-- Zestawienie sprzedazy (SalesSummary): sumy sprzedazy ksiazek (book_sales) i dni (daily_sales) oraz znacznik
+-- zamowien doliczonych do zestawienia - sumy sa obliczane z pozycji zamowien (order_lines), a zamowienie jest
+-- oznaczane w tej samej transakcji.
+--
+-- Zamowienia zlozone wczesniej sa oznaczane jako niedoliczone - zostana doliczone z pozycji zamowien przy pierwszym
+-- zapisie zestawienia po uruchomieniu aplikacji.
+
+CREATE TABLE book_sales (
+    book_id CHAR(16) FOR BIT DATA NOT NULL,
+    copies BIGINT NOT NULL,
+    revenue BIGINT NOT NULL,
+    PRIMARY KEY (book_id)
+);
+
+CREATE TABLE daily_sales (
+    day DATE NOT NULL,
+    copies BIGINT NOT NULL,
+    orders BIGINT NOT NULL,
+    revenue BIGINT NOT NULL,
+    PRIMARY KEY (day)
+);
+
+ALTER TABLE orders ADD COLUMN summarized BOOLEAN NOT NULL DEFAULT FALSE;
+CREATE INDEX orders_summarized_idx ON orders (summarized);
@@ -0,0 +1,251 @@
+package net.stawrul;
+
+import net.stawrul.controllers.RequestExecutor;
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test obsługi żądań w osobnej puli wątków (bookshop.web.execution-mode=ASYNC).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "bookshop.web.execution-mode=ASYNC",
+        "bookshop.web.async.threads=2",
+        "bookshop.web.async.max-requests=4"})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class AsyncExecutionTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private RequestExecutor requestExecutor;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void whenRequestsAreHandledAsynchronously_responsesMatchBlockingMode() throws Exception {
+        String prefix = "A" + UUID.randomUUID().toString().substring(0, 8);
+        Book first = addBook(prefix + " tom 1");
+        addBook(prefix + " tom 2");
+
+        String order = "{\"lines\": [{\"bookId\": \"" + first.getId() + "\", \"quantity\": 2}]}";
+        String location = perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content(order))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("Location");
+
+        //pozycje zamówienia są wczytywane leniwie przy zapisie odpowiedzi
+        perform(get(location))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines[0].quantity").value(2));
+
+        //adres następnej strony jest budowany na podstawie bieżącego żądania w wątku puli
+        perform(get("/books/search?title={title}&limit=1", prefix))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(header().string("Link", containsString("title=" + prefix)));
+
+        String etag = perform(get("/books/" + first.getId()))
+                .andExpect(jsonPath("$.amount").value(3))
+                .andReturn().getResponse().getHeader("ETag");
+        perform(get("/books/" + first.getId()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        assertEquals(4, requestExecutor.availablePermits());
+    }
+
+    @Test
+    public void whenTooManyRequestsArePending_requestIsRejected() throws Exception {
+        //zajęcie wszystkich miejsc zadaniami, które nie zostały jeszcze wykonane
+        List<WebAsyncTask<ResponseEntity<?>>> pending = new ArrayList<>();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            for (int i = 0; i < 4; i++) {
+                pending.add(requestExecutor.submit(() -> null));
+            }
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        mvc.perform(get("/books"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        for (WebAsyncTask<ResponseEntity<?>> task : pending) {
+            task.getCallable().call();
+        }
+        perform(get("/books")).andExpect(status().isOk());
+    }
+
+    @Test
+    public void whenRequestTimesOutBeforeItStarts_orderIsNotPlaced() throws Exception {
+        Book book = addBook("Cancelled book");
+
+        //zajęcie obu wątków puli zadaniami czekającymi na zwolnienie blokady
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> busy = new ArrayList<>();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            for (int i = 0; i < 2; i++) {
+                WebAsyncTask<ResponseEntity<?>> task = requestExecutor.submit(() -> {
+                    release.await();
+                    return null;
+                });
+                busy.add(task.getExecutor().submit(task.getCallable()));
+            }
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        String order = "{\"lines\": [{\"bookId\": \"" + book.getId() + "\", \"quantity\": 2}]}";
+        MvcResult result = mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content(order))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(timeout(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        release.countDown();
+        for (Future<?> task : busy) {
+            task.get();
+        }
+        awaitPermits();
+        assertEquals(Integer.valueOf(5), booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenOrderTimesOutWhilePlaced_responseIsNotRetryable() throws Exception {
+        Book book = addBook("Locked book");
+
+        //blokada wiersza książki wstrzymuje składanie zamówienia, które zostało już rozpoczęte
+        try (Connection lock = dataSource.getConnection()) {
+            lock.setAutoCommit(false);
+            try (PreparedStatement update = lock.prepareStatement(
+                    "UPDATE book SET amount = amount WHERE title_key = ?")) {
+                update.setString(1, "locked book");
+                assertEquals(1, update.executeUpdate());
+            }
+
+            String order = "{\"lines\": [{\"bookId\": \"" + book.getId() + "\", \"quantity\": 2}]}";
+            MvcResult result = mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content(order))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            awaitLockWait();
+            mvc.perform(timeout(result))
+                    .andExpect(status().isInternalServerError())
+                    .andExpect(header().doesNotExist("Retry-After"))
+                    .andExpect(content().string(containsString("may still be placed")));
+
+            lock.commit();
+        }
+
+        //zamówienie zostaje złożone po zwolnieniu blokady - ponowienie żądania utworzyłoby drugie zamówienie
+        awaitPermits();
+        assertEquals(Integer.valueOf(3), booksService.find(book.getId()).getAmount());
+    }
+
+    //upływ czasu obsługi żądania zgłaszany przez kontener serwletów i ponowne przekazanie żądania do DispatcherServlet
+    //(asyncDispatch czeka na wynik akcji, a odpowiedź ustalona po upływie czasu nie jest jej wynikiem)
+    private static RequestBuilder timeout(MvcResult result) throws Exception {
+        MockHttpServletRequest request = result.getRequest();
+        MockAsyncContext context = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context));
+        }
+        return servletContext -> {
+            request.setDispatcherType(DispatcherType.ASYNC);
+            request.setAsyncStarted(false);
+            return request;
+        };
+    }
+
+    //zamówienie czeka na blokadę wiersza książki - akcja została rozpoczęta w wątku puli
+    private void awaitLockWait() throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (int attempt = 0; attempt < 100; attempt++) {
+                try (ResultSet rows = statement.executeQuery(
+                        "SELECT COUNT(*) FROM SYSCS_DIAG.LOCK_TABLE WHERE state = 'WAIT'")) {
+                    rows.next();
+                    if (rows.getInt(1) > 0) {
+                        return;
+                    }
+                }
+                Thread.sleep(50);
+            }
+        }
+        fail("Order is not waiting for the book lock");
+    }
+
+    //zadania anulowane lub przerwane przez upływ czasu kończą się w wątkach puli
+    private void awaitPermits() throws InterruptedException {
+        for (int attempt = 0; attempt < 100 && requestExecutor.availablePermits() < 4; attempt++) {
+            Thread.sleep(50);
+        }
+        assertEquals(4, requestExecutor.availablePermits());
+    }
+
+    private ResultActions perform(RequestBuilder builder) throws Exception {
+        MvcResult result = mvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mvc.perform(asyncDispatch(result));
+    }
+
+    private Book addBook(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setCost(10);
+        book.setAmount(5);
+        booksService.addBook(book);
+        return book;
+    }
+}
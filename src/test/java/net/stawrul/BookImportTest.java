@@ -0,0 +1,91 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test importu książek POST /books/bulk na wbudowanej bazie Derby.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "bookshop.books.import.batch-size=3")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class BookImportTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Test
+    public void whenImportingJsonArray_invalidAndDuplicateRowsAreRejected() throws Exception {
+        UUID duplicate = UUID.randomUUID();
+        UUID last = UUID.randomUUID();
+
+        String body = "["
+                + book(UUID.randomUUID(), "Imported 1") + ","
+                + book(duplicate, "Imported 2") + ","
+                + book(UUID.randomUUID(), "abc") + ","
+                + book(UUID.randomUUID(), "Imported 4") + ","
+                + book(duplicate, "Imported 5") + ","
+                + book(UUID.randomUUID(), "Imported 6") + ","
+                + book(last, "Imported 7") + "]";
+
+        mvc.perform(post("/books/bulk").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(5))
+                .andExpect(jsonPath("$.rejected.length()").value(2))
+                .andExpect(jsonPath("$.rejected[0].row").value(3))
+                .andExpect(jsonPath("$.rejected[0].reason").value("Book title is too short"))
+                .andExpect(jsonPath("$.rejected[1].row").value(5))
+                .andExpect(jsonPath("$.rejected[1].reason").value("Book already exists"));
+
+        Book book = booksService.find(last);
+        assertNotNull(book);
+        assertEquals("Imported 7", book.getTitle());
+    }
+
+    @Test
+    public void whenImportingNdjson_everyLineIsImported() throws Exception {
+        String body = book(UUID.randomUUID(), "Streamed 1") + "\n"
+                + book(UUID.randomUUID(), "Streamed 2") + "\n"
+                + book(UUID.randomUUID(), "Streamed 3") + "\n"
+                + book(UUID.randomUUID(), "Streamed 4") + "\n";
+
+        mvc.perform(post("/books/bulk").contentType("application/x-ndjson").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(4))
+                .andExpect(jsonPath("$.rejected.length()").value(0));
+    }
+
+    @Test
+    public void whenInputIsMalformed_importStopsWithBadRequest() throws Exception {
+        String body = book(UUID.randomUUID(), "Malformed 1") + "\n{\"title\": ";
+
+        mvc.perform(post("/books/bulk").contentType("application/x-ndjson").content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.accepted").value(1));
+    }
+
+    private static String book(UUID id, String title) {
+        return "{\"id\":\"" + id + "\",\"title\":\"" + title + "\",\"cost\":20,\"amount\":5,\"oprawa\":\"Twarda\"}";
+    }
+}
@@ -0,0 +1,136 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BookSearch;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.Page;
+import net.stawrul.services.TitleIndex;
+import net.stawrul.utils.Oprawa;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.text.SimpleDateFormat;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test wyszukiwania książek GET /books/search na wbudowanej bazie Derby (z indeksem tytułów w pamięci).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "bookshop.books.title-index.enabled=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class BookSearchTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private TitleIndex titleIndex;
+
+    //przedrostek tytułów unikalny dla każdego testu - baza danych jest współdzielona przez testy
+    private String prefix;
+
+    @Before
+    public void setUp() {
+        prefix = "Q" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Test
+    public void whenSearchingByTitlePrefix_matchingBooksAreReturnedIgnoringCase() throws Exception {
+        Book first = addBook(prefix + " Pan Tadeusz", Oprawa.Twarda, 30, "2001-05-01");
+        Book second = addBook(prefix.toLowerCase() + " Potop", Oprawa.Miekka, 40, "2010-01-01");
+        addBook("Inny " + prefix, Oprawa.Twarda, 30, "2001-05-01");
+
+        assertEquals(2, titleIndex.findByPrefix(prefix, 10).size());
+
+        mvc.perform(get("/books/search").param("title", prefix.toUpperCase()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", containsInAnyOrder(first.getId().toString(),
+                        second.getId().toString())));
+
+        mvc.perform(get("/books/search").param("title", prefix).param("oprawa", "Miekka"))
+                .andExpect(jsonPath("$[*].id", containsInAnyOrder(second.getId().toString())));
+    }
+
+    @Test
+    public void whenSearchingByFragmentCostAndDate_allCriteriaAreApplied() throws Exception {
+        Book match = addBook("Wielki " + prefix + " tom 1", Oprawa.Twarda, 30, "2001-05-01");
+        addBook("Wielki " + prefix + " tom 2", Oprawa.Twarda, 60, "2001-05-01");
+        addBook("Wielki " + prefix + " tom 3", Oprawa.Twarda, 30, "2003-01-01");
+
+        mvc.perform(get("/books/search")
+                .param("title", prefix).param("contains", "true")
+                .param("minCost", "10").param("maxCost", "50")
+                .param("from", "2001-05-01").param("to", "2001-05-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", containsInAnyOrder(match.getId().toString())));
+
+        //znaki specjalne operatora LIKE są traktowane dosłownie
+        mvc.perform(get("/books/search").param("title", "%").param("contains", "true"))
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    public void whenResultsSpanPages_everyBookIsReturnedOnce() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addBook(prefix + " część " + i, Oprawa.Miekka, 10, "2015-01-01");
+        }
+
+        mvc.perform(get("/books/search?title={title}&limit=2", prefix))
+                .andExpect(header().string("Link", containsString("title=" + prefix)));
+
+        BookSearch search = new BookSearch();
+        search.setTitle(prefix);
+        Set<UUID> found = new HashSet<>();
+        String after = null;
+        do {
+            Page<Book> page = booksService.search(search, after, 2);
+            page.getItems().forEach(book -> assertTrue(found.add(book.getId())));
+            after = page.getNext();
+        } while (after != null);
+
+        assertEquals(5, found.size());
+        assertNull(titleIndex.findByPrefix(prefix, 3));
+    }
+
+    @Test
+    public void whenRangeIsInvalid_requestIsRejected() throws Exception {
+        mvc.perform(get("/books/search").param("minCost", "50").param("maxCost", "10"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/books/search").param("from", "2010-01-02").param("to", "2010-01-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private Book addBook(String title, Oprawa oprawa, int cost, String date) throws Exception {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setOprawa(oprawa);
+        book.setCost(cost);
+        book.setAmount(1);
+        book.setDate(new SimpleDateFormat("yyyy-MM-dd").parse(date));
+        booksService.addBook(book);
+        return book;
+    }
+}
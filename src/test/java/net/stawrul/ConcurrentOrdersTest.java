@@ -0,0 +1,128 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrderRetryPolicy;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.exceptions.ValidationException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test blokowania optymistycznego i ponawiania zamówień (tryb ENTITY) na wbudowanej bazie Derby - setki wątków
+ * zamawiają kilka tych samych książek.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "bookshop.orders.retry.max-attempts=50")
+@AutoConfigureTestDatabase
+public class ConcurrentOrdersTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentOrdersTest.class);
+
+    private static final int THREADS = 200;
+    private static final int ORDERS_PER_THREAD = 2;
+    private static final int BOOKS = 3;
+    private static final int AMOUNT = 150;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private OrderRetryPolicy orderRetryPolicy;
+
+    @Test
+    public void whenHundredsOfThreadsOrderSameBooks_noUpdateIsLost() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book();
+            book.setTitle("Contended book " + i);
+            book.setCost(10);
+            book.setAmount(AMOUNT);
+            booksService.addBook(book);
+            books.add(book);
+        }
+
+        //liczba sprzedanych sztuk każdej z książek
+        AtomicInteger[] sold = new AtomicInteger[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            sold[i] = new AtomicInteger();
+        }
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < ORDERS_PER_THREAD; j++) {
+                    int index = ThreadLocalRandom.current().nextInt(BOOKS);
+                    int quantity = 1 + ThreadLocalRandom.current().nextInt(2);
+
+                    Order order = new Order();
+                    order.getLines().add(new OrderLine(books.get(index).getId(), quantity));
+                    try {
+                        orderRetryPolicy.run(() -> ordersService.placeOrder(order));
+                        sold[index].addAndGet(quantity);
+                    } catch (ValidationException e) {
+                        assertEquals("Book out of stock", e.getMessage());
+                        rejected.incrementAndGet();
+                    } catch (ConcurrencyFailureException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        int orders = THREADS * ORDERS_PER_THREAD;
+        log.info("{} orders from {} threads in {} ms ({} orders/s): {} rejected, {} failed after retries",
+                orders, THREADS, elapsedMs, orders * 1000L / Math.max(1, elapsedMs), rejected.get(),
+                conflicts.get());
+
+        //stan magazynowy każdej książki zmniejszył się dokładnie o liczbę sprzedanych sztuk
+        for (int i = 0; i < BOOKS; i++) {
+            int amount = booksService.findAll().stream()
+                    .filter(books.get(i)::equals).findFirst().get().getAmount();
+            assertEquals(AMOUNT - sold[i].get(), amount);
+            assertTrue(amount >= 0);
+        }
+        assertTrue(conflicts.get() < orders);
+    }
+}
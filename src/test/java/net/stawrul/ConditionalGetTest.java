@@ -0,0 +1,136 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test żądań warunkowych (If-None-Match, If-Modified-Since) GET /books i GET /books/{id}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        //zestawienie sprzedaży nie jest zapisywane w tle - jego zapytania nie są wliczane do statystyk
+        "bookshop.sales.flush-interval-ms=3600000"})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class ConditionalGetTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Test
+    public void whenCatalogueIsUnchanged_listIsNotModified() throws Exception {
+        addBook("Listed book");
+        String etag = etag("/books");
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mvc.perform(get("/books").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        String lastModified = mvc.perform(get("/books")).andReturn().getResponse().getHeader("Last-Modified");
+        mvc.perform(get("/books").header("If-Modified-Since", lastModified))
+                .andExpect(status().isNotModified());
+
+        addBook("Another listed book");
+        mvc.perform(get("/books").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+        assertNotEquals(etag, etag("/books"));
+    }
+
+    @Test
+    public void whenStockChanges_onlyOrderedBookIsModified() throws Exception {
+        Book ordered = addBook("Ordered book");
+        Book other = addBook("Other book");
+        String orderedEtag = etag("/books/" + ordered.getId());
+        String otherEtag = etag("/books/" + other.getId());
+
+        mvc.perform(get("/books/" + ordered.getId()).header("If-None-Match", orderedEtag))
+                .andExpect(status().isNotModified());
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(ordered.getId(), 1));
+        ordersService.placeOrder(order);
+
+        mvc.perform(get("/books/" + ordered.getId()).header("If-None-Match", orderedEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag("/books/" + ordered.getId())))
+                .andExpect(content().json("{\"amount\": 9}"));
+        mvc.perform(get("/books/" + other.getId()).header("If-None-Match", otherEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void whenBookDoesNotExist_conditionalRequestIsNotFound() throws Exception {
+        String missing = "/books/" + UUID.randomUUID();
+        String future = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusDays(1));
+
+        mvc.perform(get(missing).header("If-None-Match", "*"))
+                .andExpect(status().isNotFound());
+        mvc.perform(get(missing).header("If-Modified-Since", future))
+                .andExpect(status().isNotFound());
+
+        //książka dodana po uruchomieniu aplikacji jest znana licznikowi zmian - bez zapytań do bazy danych
+        Book book = addBook("Existing book");
+        String etag = etag("/books/" + book.getId());
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mvc.perform(get("/books/" + book.getId()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    private String etag(String path) throws Exception {
+        return mvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+    }
+
+    private Book addBook(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setCost(10);
+        book.setAmount(10);
+        booksService.addBook(book);
+        return book;
+    }
+}
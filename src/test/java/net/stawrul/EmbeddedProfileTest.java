@@ -0,0 +1,60 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test profilu embedded (baza Derby zapisana na dysku, uruchomiona w procesie aplikacji).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:derby:target/embedded-${random.uuid}/dk_db;create=true",
+        "derby.system.home=target"})
+@ActiveProfiles("embedded")
+public class EmbeddedProfileTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Test
+    public void whenEmbeddedProfileIsActive_ordersAreStoredInProcess() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            String url = connection.getMetaData().getURL();
+            assertTrue(url, url.startsWith("jdbc:derby:target/embedded-"));
+        }
+        assertEquals("20000", System.getProperty("derby.storage.pageCacheSize"));
+
+        Book book = new Book();
+        book.setTitle("Embedded book");
+        book.setCost(10);
+        book.setAmount(5);
+        booksService.addBook(book);
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 2));
+        ordersService.placeOrder(order);
+
+        assertEquals(Integer.valueOf(3), booksService.findAll().get(0).getAmount());
+    }
+}
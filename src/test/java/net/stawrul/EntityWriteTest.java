@@ -0,0 +1,84 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test liczby zapytań SQL wykonywanych przy zapisie nowych książek i zamówień.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        //zestawienie sprzedaży nie jest zapisywane w tle - jego zapytania nie są wliczane do statystyk
+        "bookshop.sales.flush-interval-ms=3600000"})
+@AutoConfigureTestDatabase
+public class EntityWriteTest {
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void whenAddingBook_onlyInsertIsExecuted() {
+        //save sprawdza najpierw, czy książka istnieje
+        statistics.clear();
+        booksService.save(newBook("Saved book"));
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        booksService.addBook(newBook("Inserted book"));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void whenPlacingOrder_orderExistenceIsNotChecked() {
+        Book book = newBook("Ordered book");
+        booksService.addBook(book);
+
+        Order order = new Order();
+        order.getBooks().add(new Book(book.getId()));
+
+        statistics.clear();
+        ordersService.placeOrder(order);
+
+        //zmiana stanu książki, zapis zamówienia i jego pozycji - książka jest pobierana z pamięci podręcznej drugiego
+        //poziomu
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    private static Book newBook(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setCost(10);
+        book.setAmount(10);
+        return book;
+    }
+}
@@ -0,0 +1,46 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test profilu fast (leniwe tworzenie komponentów, brak sprawdzania schematu przez Hibernate).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("fast")
+public class FastStartProfileTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Test
+    public void whenFastProfileIsActive_beansAreCreatedOnFirstUse() {
+        assertFalse(context.getBeanFactory().containsSingleton("catalogueVersion"));
+        assertFalse(context.getBeanFactory().containsSingleton("orderIngestService"));
+
+        BooksService booksService = context.getBean(BooksService.class);
+        Book book = new Book();
+        book.setTitle("Lazy book");
+        book.setCost(10);
+        book.setAmount(1);
+        booksService.addBook(book);
+
+        assertEquals("Lazy book", booksService.find(book.getId()).getTitle());
+        //wersja katalogu jest tworzona przy obsłudze pierwszego zdarzenia zapisu książek
+        assertTrue(context.getBeanFactory().containsSingleton("catalogueVersion"));
+    }
+}
@@ -0,0 +1,102 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test ponawiania żądania POST /orders z nagłówkiem Idempotency-Key na wbudowanej bazie Derby.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class IdempotencyTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Test
+    public void whenOrderIsRetriedWithSameKey_originalOrderIsReturned() throws Exception {
+        Book book = addBook();
+        String key = UUID.randomUUID().toString();
+
+        String first = mvc.perform(order(book).header("Idempotency-Key", key))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("Location");
+
+        //ponowienie żądania (z nowym identyfikatorem zamówienia) zwraca adres pierwszego zamówienia
+        String retry = mvc.perform(order(book).header("Idempotency-Key", key))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("Location");
+
+        assertEquals(first, retry);
+        assertEquals(Integer.valueOf(4), booksService.find(book.getId()).getAmount());
+        assertEquals(first, "http://localhost/orders/" + ordersService.findIdByIdempotencyKey(key));
+    }
+
+    @Test
+    public void whenOrdersHaveDifferentOrNoKeys_eachOrderIsPlaced() throws Exception {
+        Book book = addBook();
+
+        String first = mvc.perform(order(book).header("Idempotency-Key", UUID.randomUUID().toString()))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("Location");
+        String second = mvc.perform(order(book).header("Idempotency-Key", UUID.randomUUID().toString()))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("Location");
+        mvc.perform(order(book)).andExpect(status().isCreated());
+        mvc.perform(order(book)).andExpect(status().isCreated());
+
+        assertNotEquals(first, second);
+        assertEquals(Integer.valueOf(1), booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenKeyIsTooLong_requestIsRejected() throws Exception {
+        Book book = addBook();
+        char[] key = new char[Order.IDEMPOTENCY_KEY_LENGTH + 1];
+        Arrays.fill(key, 'k');
+
+        mvc.perform(order(book).header("Idempotency-Key", new String(key))).andExpect(status().isBadRequest());
+    }
+
+    private Book addBook() {
+        Book book = new Book();
+        book.setTitle("Retried book");
+        book.setCost(10);
+        book.setAmount(5);
+        booksService.addBook(book);
+        return book;
+    }
+
+    private static MockHttpServletRequestBuilder order(Book book) {
+        return post("/orders").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"books\": [{\"id\": \"" + book.getId() + "\"}]}");
+    }
+}
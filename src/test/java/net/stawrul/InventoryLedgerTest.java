@@ -0,0 +1,120 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.InventoryLedger;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.exceptions.ValidationException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test trybu LEDGER na wbudowanej bazie Derby - rezerwacje w pamięci i zapis zmian w tabeli Book w tle.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"bookshop.orders.stock-mode=LEDGER", "bookshop.inventory.flush-interval-ms=3600000"})
+@AutoConfigureTestDatabase
+public class InventoryLedgerTest {
+
+    private static final int THREADS = 16;
+    private static final int ORDERS_PER_THREAD = 10;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private InventoryLedger inventoryLedger;
+
+    @Test
+    public void whenManyThreadsOrderSameBook_flushWritesSoldCopies() throws Exception {
+        Book book = new Book();
+        book.setTitle("Bestseller");
+        book.setCost(10);
+        book.setAmount(50);
+        booksService.addBook(book);
+
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < ORDERS_PER_THREAD; j++) {
+                    Order order = new Order();
+                    order.getBooks().add(new Book(book.getId()));
+                    try {
+                        ordersService.placeOrder(order);
+                        accepted.incrementAndGet();
+                    } catch (ValidationException e) {
+                        assertEquals("Book out of stock", e.getMessage());
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        assertEquals(50, accepted.get());
+        assertEquals(Integer.valueOf(0), inventoryLedger.available(book.getId()));
+
+        //przed zapisem w tle tabela Book zawiera jeszcze stan początkowy
+        assertEquals(Integer.valueOf(50), booksService.find(book.getId()).getAmount());
+
+        inventoryLedger.flush();
+        assertEquals(Integer.valueOf(0), booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenBookIsSavedBeforeFlush_pendingSalesAreKept() {
+        Book book = new Book();
+        book.setTitle("Restocked book");
+        book.setCost(10);
+        book.setAmount(10);
+        booksService.addBook(book);
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 3));
+        ordersService.placeOrder(order);
+
+        //zapis liczby sztuk odczytanej z tabeli Book przed zapisem w tle nie zmienia stanu w rejestrze
+        Book stale = booksService.find(book.getId());
+        assertEquals(Integer.valueOf(10), stale.getAmount());
+        booksService.update(stale);
+        assertEquals(Integer.valueOf(7), inventoryLedger.available(book.getId()));
+
+        //dostawa 5 sztuk
+        stale.setAmount(15);
+        booksService.update(stale);
+        assertEquals(Integer.valueOf(12), inventoryLedger.available(book.getId()));
+
+        inventoryLedger.flush();
+        assertEquals(Integer.valueOf(12), booksService.find(book.getId()).getAmount());
+    }
+}
@@ -0,0 +1,77 @@
+package net.stawrul;
+
+import net.stawrul.utils.Uuids;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test zapisu identyfikatorów w kolumnach CHAR(16) FOR BIT DATA i indeksów tabel zamówień.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureTestDatabase
+public class KeyLayoutTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void newIdsAreTimeOrdered() {
+        UUID previous = Uuids.timeOrdered();
+        for (int i = 0; i < 1000; i++) {
+            UUID id = Uuids.timeOrdered();
+            assertEquals(7, id.version());
+            assertEquals(2, id.variant());
+            //pierwsze 48 bitów to czas utworzenia w milisekundach
+            assertTrue(id.getMostSignificantBits() >>> 16 >= previous.getMostSignificantBits() >>> 16);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void idColumnsAreFixedLengthAndJoinColumnsAreIndexed() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            assertFixedLength(metaData, "BOOK", "ID");
+            assertFixedLength(metaData, "ORDERS", "ID");
+            assertFixedLength(metaData, "ORDER_LINES", "ORDER_ID");
+            assertFixedLength(metaData, "ORDER_LINES", "BOOK_ID");
+
+            assertTrue(indexes(metaData, "ORDER_LINES").contains("ORDER_LINES_BOOK_IDX"));
+            assertTrue(indexes(metaData, "ORDERS").contains("ORDERS_CREATION_DATE_IDX"));
+        }
+    }
+
+    private static void assertFixedLength(DatabaseMetaData metaData, String table, String column) throws Exception {
+        try (ResultSet columns = metaData.getColumns(null, null, table, column)) {
+            assertTrue(columns.next());
+            assertEquals("CHAR () FOR BIT DATA", columns.getString("TYPE_NAME"));
+            assertEquals(Uuids.LENGTH, columns.getInt("COLUMN_SIZE"));
+        }
+    }
+
+    private static Set<String> indexes(DatabaseMetaData metaData, String table) throws Exception {
+        Set<String> names = new HashSet<>();
+        try (ResultSet indexes = metaData.getIndexInfo(null, null, table, false, false)) {
+            while (indexes.next()) {
+                names.add(indexes.getString("INDEX_NAME"));
+            }
+        }
+        return names;
+    }
+}
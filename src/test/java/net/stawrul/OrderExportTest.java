@@ -0,0 +1,66 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test eksportu zamówień GET /orders/export.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "bookshop.orders.export.timeout-ms=12345")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class OrderExportTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Test
+    public void whenExportingOrders_ndjsonIsStreamedWithExportTimeout() throws Exception {
+        Book book = new Book();
+        book.setTitle("Exported book");
+        book.setCost(10);
+        book.setAmount(10);
+        booksService.addBook(book);
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 2));
+        ordersService.placeOrder(order);
+
+        MvcResult result = mvc.perform(get("/orders/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        //limit czasu eksportu nie dotyczy pozostałych żądań asynchronicznych
+        assertEquals(12345, result.getRequest().getAsyncContext().getTimeout());
+
+        mvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        assertEquals("application/x-ndjson", result.getResponse().getContentType());
+        String body = result.getResponse().getContentAsString();
+        assertTrue(body, body.contains("\"id\":\"" + order.getId() + "\""));
+        assertTrue(body, body.endsWith("\n"));
+    }
+}
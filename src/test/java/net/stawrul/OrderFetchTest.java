@@ -0,0 +1,131 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test liczby zapytań SQL potrzebnych do wczytania zamówień wraz z pozycjami - nie może rosnąć wraz z liczbą
+ * zamówień (problem N+1 zapytań).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        //zestawienie sprzedaży nie jest zapisywane w tle - jego zapytania nie są wliczane do statystyk
+        "bookshop.sales.flush-interval-ms=3600000"})
+@AutoConfigureTestDatabase
+public class OrderFetchTest {
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+
+    private Book book;
+
+    @Before
+    public void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        book = new Book();
+        book.setTitle("Fetched book");
+        book.setCost(10);
+        book.setAmount(1000);
+        booksService.addBook(book);
+    }
+
+    @Test
+    public void whenOrderCountGrows_findAllStatementCountStaysConstant() {
+        placeOrders(3);
+        long few = countStatements(() -> touchLines(ordersService.findAll()));
+
+        placeOrders(40);
+        long many = countStatements(() -> touchLines(ordersService.findAll()));
+
+        assertEquals(1, few);
+        assertEquals(few, many);
+    }
+
+    @Test
+    public void whenOrderCountGrows_pageStatementCountStaysConstant() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        placeOrders(3);
+        long few = countStatements(() -> tx.execute(status -> touchLines(ordersService.findPage(null, 20).getItems())));
+
+        placeOrders(40);
+        long many = countStatements(() -> tx.execute(status -> touchLines(ordersService.findPage(null, 20).getItems())));
+
+        //strona zamówień i jedno zbiorcze zapytanie o pozycje zamówień
+        assertEquals(2, many);
+        assertTrue(few <= many);
+    }
+
+    @Test
+    public void whenFindingOrderWithLines_singleStatementIsUsed() {
+        Order order = new Order();
+        order.getBooks().add(new Book(book.getId()));
+        order.getBooks().add(new Book(book.getId()));
+        ordersService.placeOrder(order);
+
+        long statements = countStatements(() -> {
+            List<OrderLine> lines = ordersService.findWithLines(order.getId()).getLines();
+            assertEquals(1, lines.size());
+            assertEquals(2, lines.get(0).getQuantity());
+        });
+        assertEquals(1, statements);
+    }
+
+    private void placeOrders(int count) {
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.getBooks().add(new Book(book.getId()));
+            order.getBooks().add(new Book(book.getId()));
+            ordersService.placeOrder(order);
+        }
+    }
+
+    private Object touchLines(List<Order> orders) {
+        for (Order order : orders) {
+            for (OrderLine line : order.getLines()) {
+                line.getQuantity();
+            }
+        }
+        return null;
+    }
+
+    private long countStatements(Runnable action) {
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
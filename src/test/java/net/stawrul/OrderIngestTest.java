@@ -0,0 +1,146 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrderIngestService;
+import net.stawrul.services.OrderRetryPolicy;
+import net.stawrul.services.OrderStatus;
+import net.stawrul.services.OrdersService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test asynchronicznego przyjmowania zamówień (bookshop.orders.ingest.enabled=true) na wbudowanej bazie Derby.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "bookshop.orders.ingest.enabled=true")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class OrderIngestTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private OrderRetryPolicy orderRetryPolicy;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void whenOrderIsPosted_statusUrlReportsOutcome() throws Exception {
+        Book book = addBook(5);
+        UUID orderId = UUID.randomUUID();
+
+        String location = mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": \"" + orderId + "\", \"books\": [{\"id\": \"" + book.getId() + "\"}]}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "http://localhost/orders/" + orderId + "/status"))
+                .andReturn().getResponse().getHeader("Location");
+
+        for (int i = 0; i < 100 && "QUEUED".equals(state(location)); i++) {
+            Thread.sleep(50);
+        }
+
+        mvc.perform(get(location)).andExpect(jsonPath("$.state").value("ACCEPTED"));
+        assertEquals(Integer.valueOf(4), booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenOrderIsRetriedWithIdempotencyKey_sameStatusUrlIsReturned() throws Exception {
+        Book book = addBook(5);
+        String order = "{\"books\": [{\"id\": \"" + book.getId() + "\"}]}";
+
+        //ponowienie żądania, gdy pierwsze zamówienie czeka jeszcze w kolejce lub zostało już zapisane
+        String first = mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "queued-retry").content(order))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getHeader("Location");
+        mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "queued-retry").content(order))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", first));
+
+        for (int i = 0; i < 100 && "QUEUED".equals(state(first)); i++) {
+            Thread.sleep(50);
+        }
+
+        mvc.perform(get(first)).andExpect(jsonPath("$.state").value("ACCEPTED"));
+        assertEquals(Integer.valueOf(4), booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenOneOrderInBatchIsRejected_otherOrdersAreStillAccepted() throws Exception {
+        Book book = addBook(2);
+        Order first = order(book, 1);
+        Order tooLarge = order(book, 2);
+        Order last = order(book, 1);
+
+        //kolejka o pojemności 3, zamówienia zostaną zapisane jedną porcją po uruchomieniu wątku zapisującego
+        OrderIngestService ingest = new OrderIngestService(ordersService, orderRetryPolicy, transactionManager,
+                3, 50, 1, 60);
+        assertTrue(ingest.submit(first));
+        assertTrue(ingest.submit(tooLarge));
+        assertTrue(ingest.submit(last));
+        assertFalse(ingest.submit(order(book, 1)));
+
+        ingest.start();
+        ingest.stop();
+
+        assertEquals(OrderStatus.State.ACCEPTED, ingest.status(first.getId()).getState());
+        assertEquals(OrderStatus.State.REJECTED, ingest.status(tooLarge.getId()).getState());
+        assertEquals("Book out of stock", ingest.status(tooLarge.getId()).getReason());
+        assertNull(ordersService.find(tooLarge.getId()));
+        assertEquals(OrderStatus.State.ACCEPTED, ingest.status(last.getId()).getState());
+        assertEquals(Integer.valueOf(0), booksService.find(book.getId()).getAmount());
+    }
+
+    private String state(String location) throws Exception {
+        return mvc.perform(get(location)).andReturn().getResponse().getContentAsString()
+                .replaceAll(".*\"state\":\"([A-Z]+)\".*", "$1");
+    }
+
+    private Book addBook(int amount) {
+        Book book = new Book();
+        book.setTitle("Queued book");
+        book.setCost(10);
+        book.setAmount(amount);
+        booksService.addBook(book);
+        return book;
+    }
+
+    private static Order order(Book book, int copies) {
+        Order order = new Order();
+        for (int i = 0; i < copies; i++) {
+            order.getBooks().add(new Book(book.getId()));
+        }
+        return order;
+    }
+}
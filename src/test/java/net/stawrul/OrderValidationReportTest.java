@@ -0,0 +1,70 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test odpowiedzi 422 z listą wszystkich błędów zamówienia (bookshop.orders.validation.mode=COLLECT_ALL).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "bookshop.orders.validation.mode=COLLECT_ALL")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class OrderValidationReportTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Test
+    public void whenOrderHasManyInvalidLines_allViolationsAreReturned() throws Exception {
+        Book available = addBook(5);
+        Book scarce = addBook(1);
+        UUID missing = UUID.randomUUID();
+
+        String lines = "[" + line(available.getId(), 1) + "," + line(scarce.getId(), 3) + ","
+                + line(missing, 1) + "," + line(available.getId(), -1) + "]";
+
+        mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content("{\"lines\": " + lines + "}"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.violations.length()").value(3))
+                .andExpect(jsonPath("$.violations[*].message",
+                        containsInAnyOrder("Invalid quantity", "Book out of stock", "Book not found")))
+                .andExpect(jsonPath("$.violations[?(@.message == 'Book not found')].bookId",
+                        containsInAnyOrder(missing.toString())));
+
+        assertEquals(Integer.valueOf(5), booksService.find(available.getId()).getAmount());
+    }
+
+    private Book addBook(int amount) {
+        Book book = new Book();
+        book.setTitle("Validated book");
+        book.setCost(10);
+        book.setAmount(amount);
+        booksService.addBook(book);
+        return book;
+    }
+
+    private static String line(UUID bookId, int quantity) {
+        return "{\"bookId\": \"" + bookId + "\", \"quantity\": " + quantity + "}";
+    }
+}
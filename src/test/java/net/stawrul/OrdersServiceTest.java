@@ -2,21 +2,32 @@ package net.stawrul;
 
 import net.stawrul.model.Book;
 import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
 import net.stawrul.services.BooksService;
 import net.stawrul.services.OrdersService;
+import net.stawrul.services.exceptions.OrderValidationException;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import net.stawrul.services.exceptions.ValidationException;
 import org.junit.Assert;
 
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.times;
@@ -27,6 +38,29 @@ public class OrdersServiceTest {
     @Mock
     private EntityManager em;
 
+    @Mock
+    private TypedQuery<Book> booksQuery;
+
+    @Mock
+    private EntityManagerFactory emf;
+
+    //Pusta pamięć podręczna drugiego poziomu - wszystkie książki są pobierane zapytaniem
+    @Mock
+    private Cache cache;
+
+    @Before
+    public void setUp() {
+        Mockito.when(em.getEntityManagerFactory()).thenReturn(emf);
+        Mockito.when(emf.getCache()).thenReturn(cache);
+    }
+
+    //Książki z zamówienia są pobierane jednym zapytaniem nazwanym Book.FIND_BY_IDS
+    private void mockBooks(Book... books) {
+        Mockito.when(em.createNamedQuery(Book.FIND_BY_IDS, Book.class)).thenReturn(booksQuery);
+        Mockito.when(booksQuery.setParameter(Mockito.eq("ids"), Mockito.any())).thenReturn(booksQuery);
+        Mockito.when(booksQuery.getResultList()).thenReturn(Arrays.asList(books));
+    }
+
     @Test
     public void whenOrderedBookNotAvailable_throwsException() {
         Book book = new Book();
@@ -52,15 +86,15 @@ public class OrdersServiceTest {
         book.setCost(34);
         order.getBooks().add(book);
 
-        Mockito.when(em.find(Book.class, book.getId())).thenReturn(book);
-        
+        Book first = book;
+
         book = new Book();
         book.setTitle("ghgfd");
         book.setAmount(1);
         book.setCost(61);
         order.getBooks().add(book);
 
-        Mockito.when(em.find(Book.class, book.getId())).thenReturn(book);
+        mockBooks(first, book);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -77,15 +111,13 @@ public class OrdersServiceTest {
         book1.setCost(34);
         order.getBooks().add(book1);
 
-        Mockito.when(em.find(Book.class, book1.getId())).thenReturn(book1);
-        
         Book book2 = new Book();
         book2.setTitle("ghgfd");
         book2.setAmount(2);
         book2.setCost(61);
         order.getBooks().add(book2);
 
-        Mockito.when(em.find(Book.class, book2.getId())).thenReturn(book2);
+        mockBooks(book1, book2);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -164,7 +196,7 @@ public class OrdersServiceTest {
         book.setAmount(2);
         order.getBooks().add(book);
 
-        Mockito.when(em.find(Book.class, book.getId())).thenReturn(book);
+        mockBooks(book);
 
 
         OrdersService ordersService = new OrdersService(em);
@@ -190,10 +222,215 @@ public class OrdersServiceTest {
         order.getBooks().add(book);
         order.getBooks().add(book);
 
-        Mockito.when(em.find(Book.class, book.getId())).thenReturn(book);
+        mockBooks(book);
 
         OrdersService ordersService = new OrdersService(em);
 
         ordersService.validateOrder(order);
     }
+
+    @Test
+    public void whenOrderHasManyBooks_booksAreLoadedWithSingleQuery() {
+        Order order = new Order();
+        Book[] books = new Book[20];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = new Book();
+            books[i].setTitle("abcdef" + i);
+            books[i].setCost(10);
+            books[i].setAmount(5);
+            order.getBooks().add(books[i]);
+            order.getBooks().add(books[i]);
+        }
+
+        mockBooks(books);
+
+        OrdersService ordersService = new OrdersService(em);
+
+        ordersService.placeOrder(order);
+
+        Mockito.verify(em, times(1)).createNamedQuery(Book.FIND_BY_IDS, Book.class);
+        Mockito.verify(em, Mockito.never()).find(Mockito.eq(Book.class), Mockito.any());
+        assertEquals(Integer.valueOf(3), books[7].getAmount());
+    }
+
+    @Test
+    public void whenOrderLineHasQuantity_amountIsDecreasedOncePerLine() {
+        Book book = new Book();
+        book.setTitle("abcdef");
+        book.setCost(20);
+        book.setAmount(5);
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 3));
+        //pozycje tej samej książki oraz lista books (starszy format) są łączone w jedną pozycję
+        order.getBooks().add(new Book(book.getId()));
+
+        mockBooks(book);
+
+        OrdersService ordersService = new OrdersService(em);
+
+        ordersService.placeOrder(order);
+
+        assertEquals(Integer.valueOf(1), book.getAmount());
+        assertEquals(1, order.getLines().size());
+        assertEquals(4, order.getLines().get(0).getQuantity());
+        assertEquals(80, ordersService.getTotalValue(order));
+    }
+
+    @Test
+    public void whenOrderLineQuantityExceedsAmount_throwsException() {
+        Book book = new Book();
+        book.setTitle("abcdef");
+        book.setCost(20);
+        book.setAmount(2);
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 3));
+
+        mockBooks(book);
+
+        OrdersService ordersService = new OrdersService(em);
+
+        try {
+            ordersService.placeOrder(order);
+            fail();
+        } catch(ValidationException e) {
+            assertEquals(e.getMessage(), "Book out of stock");
+        }
+        assertEquals(Integer.valueOf(2), book.getAmount());
+    }
+
+    @Test
+    public void whenOrderLineQuantityIsNotPositive_throwsException() {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(UUID.randomUUID(), 0));
+
+        OrdersService ordersService = new OrdersService(em);
+
+        try {
+            ordersService.validateOrder(order);
+            fail();
+        } catch(ValidationException e) {
+            assertEquals(e.getMessage(), "Invalid quantity");
+        }
+    }
+
+    @Test
+    public void whenOrderLineQuantitiesOverflow_throwsException() {
+        Order order = new Order();
+        UUID bookId = UUID.randomUUID();
+        order.getLines().add(new OrderLine(bookId, Integer.MAX_VALUE));
+        order.getLines().add(new OrderLine(bookId, 1));
+
+        OrdersService ordersService = new OrdersService(em);
+
+        try {
+            ordersService.validateOrder(order);
+            fail();
+        } catch(ValidationException e) {
+            assertEquals("Invalid quantity", e.getMessage());
+        }
+    }
+
+    @Test
+    public void whenCollectingAllViolations_overflowingQuantitiesAreReported() {
+        Book book = new Book();
+        book.setTitle("abcdef");
+        book.setCost(20);
+        book.setAmount(5);
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), Integer.MAX_VALUE));
+        order.getLines().add(new OrderLine(book.getId(), 1));
+        order.getLines().add(new OrderLine(book.getId(), 1));
+
+        mockBooks(book);
+
+        OrdersService ordersService = new OrdersService(em);
+        ordersService.setValidationMode(OrdersService.ValidationMode.COLLECT_ALL);
+
+        try {
+            ordersService.placeOrder(order);
+            fail();
+        } catch(OrderValidationException e) {
+            assertEquals(1, e.getViolations().size());
+            assertEquals(book.getId(), e.getViolations().get(0).getBookId());
+            assertEquals("Invalid quantity", e.getViolations().get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void whenCollectingAllViolations_everyInvalidLineIsReported() {
+        Book available = new Book();
+        available.setTitle("abcdef");
+        available.setCost(20);
+        available.setAmount(5);
+
+        Book noCost = new Book();
+        noCost.setTitle("ghijkl");
+        noCost.setAmount(5);
+
+        Book scarce = new Book();
+        scarce.setTitle("mnopqr");
+        scarce.setCost(20);
+        scarce.setAmount(1);
+
+        UUID missing = UUID.randomUUID();
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(available.getId(), 2));
+        order.getLines().add(new OrderLine(noCost.getId(), 1));
+        order.getLines().add(new OrderLine(scarce.getId(), 2));
+        order.getLines().add(new OrderLine(missing, 1));
+        order.getLines().add(new OrderLine(available.getId(), 0));
+
+        mockBooks(available, noCost, scarce);
+
+        OrdersService ordersService = new OrdersService(em);
+        ordersService.setValidationMode(OrdersService.ValidationMode.COLLECT_ALL);
+
+        try {
+            ordersService.placeOrder(order);
+            fail();
+        } catch(OrderValidationException e) {
+            Map<UUID, String> violations = new HashMap<>();
+            e.getViolations().forEach(violation -> violations.put(violation.getBookId(), violation.getMessage()));
+
+            assertEquals(4, e.getViolations().size());
+            assertEquals("Invalid quantity", violations.get(available.getId()));
+            assertEquals("Book has no cost", violations.get(noCost.getId()));
+            assertEquals("Book out of stock", violations.get(scarce.getId()));
+            assertEquals("Book not found", violations.get(missing));
+        }
+        assertEquals(Integer.valueOf(5), available.getAmount());
+    }
+
+    @Test
+    public void whenOrderIsLarge_parallelValidationReportsSameViolations() {
+        Order order = new Order();
+        Book[] books = new Book[200];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = new Book();
+            books[i].setTitle("Book " + i);
+            books[i].setCost(10);
+            books[i].setAmount(i % 3);
+            order.getLines().add(new OrderLine(books[i].getId(), 1));
+        }
+        Map<UUID, Book> found = new HashMap<>();
+        for (Book book : books) {
+            found.put(book.getId(), book);
+        }
+
+        OrdersService ordersService = new OrdersService(em);
+        ordersService.setValidationMode(OrdersService.ValidationMode.COLLECT_ALL);
+
+        ordersService.setParallelValidationThreshold(Integer.MAX_VALUE);
+        List<OrderValidationException.Violation> sequential = ordersService.findViolations(order, found);
+        ordersService.setParallelValidationThreshold(1);
+        List<OrderValidationException.Violation> parallel = ordersService.findViolations(order, found);
+
+        assertEquals(67, sequential.size());
+        assertEquals(sequential.stream().map(OrderValidationException.Violation::getBookId).collect(toList()),
+                parallel.stream().map(OrderValidationException.Violation::getBookId).collect(toList()));
+    }
 }
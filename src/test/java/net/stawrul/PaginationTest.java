@@ -0,0 +1,108 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.EntityService;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.Page;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test stronicowania list książek i zamówień oraz eksportu zamówień na wbudowanej bazie Derby.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = "bookshop.orders.export.chunk-size=5")
+@AutoConfigureTestDatabase
+public class PaginationTest {
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Test
+    public void whenPagingThroughBooks_everyBookIsReturnedOnce() {
+        Book book = null;
+        for (int i = 0; i < 25; i++) {
+            book = new Book();
+            book.setTitle("Paged book " + i);
+            book.setCost(10);
+            book.setAmount(100);
+            booksService.addBook(book);
+        }
+
+        Set<UUID> seen = new HashSet<>();
+        String after = null;
+        do {
+            Page<Book> page = booksService.findPage(after, 7);
+            assertTrue(page.getItems().size() <= 7);
+            for (Book b : page.getItems()) {
+                assertTrue(seen.add(b.getId()));
+            }
+            after = page.getNext();
+        } while (after != null);
+
+        assertEquals(booksService.findAll().size(), seen.size());
+
+        //zamówienia tej samej książki
+        for (int i = 0; i < 5; i++) {
+            Order order = new Order();
+            order.getBooks().add(new Book(book.getId()));
+            ordersService.placeOrder(order);
+        }
+
+        Set<UUID> orders = new HashSet<>();
+        Page<Order> page = ordersService.findPage(null, 2);
+        while (true) {
+            for (Order o : page.getItems()) {
+                assertTrue(orders.add(o.getId()));
+            }
+            if (page.getNext() == null) {
+                break;
+            }
+            page = ordersService.findPage(page.getNext(), 2);
+        }
+
+        assertEquals(ordersService.findAll().size(), orders.size());
+        assertNull(ordersService.findPage(null, EntityService.MAX_PAGE_SIZE).getNext());
+    }
+
+    @Test
+    public void whenExportingOrders_everyOrderIsStreamedOnce() {
+        Book book = new Book();
+        book.setTitle("Exported book");
+        book.setCost(10);
+        book.setAmount(100);
+        booksService.addBook(book);
+
+        for (int i = 0; i < 12; i++) {
+            Order order = new Order();
+            order.getBooks().add(new Book(book.getId()));
+            ordersService.placeOrder(order);
+        }
+
+        Set<UUID> exported = new HashSet<>();
+        long count = ordersService.exportAll(order -> {
+            assertTrue(exported.add(order.getId()));
+            assertTrue(order.getLines().size() > 0);
+        });
+
+        assertEquals(ordersService.findAll().size(), count);
+        assertEquals(count, exported.size());
+    }
+}
@@ -0,0 +1,52 @@
+package net.stawrul;
+
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariDataSource;
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test profilu perf (pula połączeń HikariCP) na wbudowanej bazie Derby przechowywanej w pamięci.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:derby:memory:perf;create=true",
+        "spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver",
+        "spring.datasource.hikari.maximum-pool-size=4",
+        "spring.datasource.hikari.minimum-idle=1"})
+@ActiveProfiles("perf")
+public class PerfProfileTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Test
+    public void whenPerfProfileIsActive_hikariPoolIsUsedAndReportsWaitTime() {
+        Book book = new Book();
+        book.setTitle("Pooled book");
+        book.setCost(10);
+        book.setAmount(1);
+        booksService.addBook(book);
+
+        assertTrue(dataSource instanceof HikariDataSource);
+        assertEquals(4, ((HikariDataSource) dataSource).getMaximumPoolSize());
+        assertTrue(metricRegistry.getTimers().get("bookshop.pool.Wait").getCount() > 0);
+    }
+}
@@ -0,0 +1,118 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.BookSales;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.SalesSummary;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test wartości zamówień zapamiętywanej przy ich składaniu i zestawienia sprzedaży GET /stats/sales.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class SalesSummaryTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private SalesSummary salesSummary;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void whenBookPriceChanges_placedOrdersAndSalesKeepPurchasePrice() throws Exception {
+        Book book = new Book();
+        book.setTitle("Summarized book");
+        book.setCost(10);
+        book.setAmount(10);
+        booksService.addBook(book);
+
+        Order first = new Order();
+        first.getLines().add(new OrderLine(book.getId(), 3));
+        ordersService.placeOrder(first);
+
+        book.setCost(20);
+        booksService.update(book);
+
+        Order second = new Order();
+        second.getLines().add(new OrderLine(book.getId(), 1));
+        ordersService.placeOrder(second);
+
+        salesSummary.flush();
+
+        mvc.perform(get("/orders/" + first.getId()))
+                .andExpect(jsonPath("$.totalValue").value(30))
+                .andExpect(jsonPath("$.lines[0].unitCost").value(10))
+                .andExpect(jsonPath("$.lines[0].quantity").value(3))
+                .andExpect(jsonPath("$.books").doesNotExist());
+
+        String sales = "$.books[?(@.bookId == '" + book.getId() + "')]";
+        mvc.perform(get("/stats/sales").param("books", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath(sales + ".copies", contains(4)))
+                .andExpect(jsonPath(sales + ".revenue", contains(50)))
+                .andExpect(jsonPath("$.days[0].orders").isNumber());
+    }
+
+    @Test
+    public void whenOrderIsSummarizedByAnotherInstance_itIsCountedOnce() {
+        Book book = new Book();
+        book.setTitle("Recovered book");
+        book.setCost(7);
+        book.setAmount(10);
+        booksService.addBook(book);
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 2));
+        ordersService.placeOrder(order);
+
+        //nowa instancja (np. po ponownym uruchomieniu aplikacji) dolicza zamówienia zapisane w bazie danych
+        new SalesSummary(em, transactionManager).flush();
+        salesSummary.flush();
+
+        BookSales sales = salesSummary.topBooks(1000).stream()
+                .filter(s -> s.getBookId().equals(book.getId()))
+                .findFirst()
+                .get();
+        assertEquals(2, sales.getCopies());
+        assertEquals(14, sales.getRevenue());
+    }
+
+    @Test
+    public void whenLimitIsTooLarge_requestIsRejected() throws Exception {
+        mvc.perform(get("/stats/sales").param("days", "100000")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,114 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test migracji Flyway bazy danych utworzonej wcześniej przez Hibernate (ddl-auto=update).
+ */
+public class SchemaMigrationTest {
+
+    //schemat utworzony przez Hibernate z klas encyjnych sprzed wprowadzenia migracji - bez tabeli migracji Flyway
+    private static final String[] BASELINE = {
+            "create table book (id varchar(255) for bit data not null, amount integer, cost integer, "
+                    + "date timestamp, oprawa varchar(255), title varchar(255), primary key (id))",
+            "create table orders (id varchar(255) for bit data not null, creation_date timestamp, primary key (id))",
+            "create table orders_books (order_id varchar(255) for bit data not null, "
+                    + "books_id varchar(255) for bit data not null)",
+            "alter table orders_books add constraint FK5jfo1ob4ev0f1dtowoul3uo38 "
+                    + "foreign key (books_id) references book",
+            "alter table orders_books add constraint FKol7arli7ptfejk3kwuo2n2mx3 "
+                    + "foreign key (order_id) references orders"};
+
+    @Test
+    public void whenDatabaseWasCreatedByHibernate_itIsBaselinedAndMigrated() throws Exception {
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("memory:legacy");
+        dataSource.setCreateDatabase("create");
+        //schemat użytkownika z application.properties
+        dataSource.setUser("dk");
+
+        UUID bookId = UUID.randomUUID();
+        UUID otherBookId = UUID.randomUUID();
+        UUID orderId = UUID.randomUUID();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : BASELINE) {
+                statement.execute(sql);
+            }
+            execute(connection, "INSERT INTO book (id, title, amount, cost) VALUES (?, 'Legacy Book', 5, 10)", bookId);
+            execute(connection, "INSERT INTO book (id, title, amount, cost) VALUES (?, 'Other Book', 5, 7)",
+                    otherBookId);
+            execute(connection, "INSERT INTO orders (id) VALUES (?)", orderId);
+            //jeden wiersz tabeli złączenia na każdą zamówioną sztukę
+            execute(connection, "INSERT INTO orders_books (order_id, books_id) VALUES (?, ?)", orderId, bookId);
+            execute(connection, "INSERT INTO orders_books (order_id, books_id) VALUES (?, ?)", orderId, bookId);
+            execute(connection, "INSERT INTO orders_books (order_id, books_id) VALUES (?, ?)", orderId, otherBookId);
+        }
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BookshopApplication.class)
+                .web(false)
+                .run("--spring.datasource.url=jdbc:derby:memory:legacy",
+                        "--spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver")) {
+            Book book = context.getBean(BooksService.class).find(bookId);
+            assertEquals("Legacy Book", book.getTitle());
+            assertEquals(Long.valueOf(0), book.getVersion());
+
+            Order order = context.getBean(OrdersService.class).findWithLines(orderId);
+            List<OrderLine> lines = order.getLines();
+            lines.sort(Comparator.comparing(OrderLine::getQuantity));
+            assertEquals(2, lines.size());
+            assertEquals(otherBookId, lines.get(0).getBookId());
+            assertEquals(1, lines.get(0).getQuantity());
+            assertEquals(Integer.valueOf(7), lines.get(0).getUnitCost());
+            assertEquals(bookId, lines.get(1).getBookId());
+            assertEquals(2, lines.get(1).getQuantity());
+            assertEquals(Integer.valueOf(10), lines.get(1).getUnitCost());
+            assertEquals(Integer.valueOf(27), order.getTotalValue());
+        }
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(dataSource);
+        assertEquals("5", flyway.info().current().getVersion().getVersion());
+        try (Connection connection = dataSource.getConnection();
+             ResultSet tables = connection.getMetaData().getTables(null, "DK", "ORDERS_BOOKS", null)) {
+            assertFalse(tables.next());
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT title_key FROM book WHERE title = 'Legacy Book'")) {
+            rows.next();
+            assertEquals("legacy book", rows.getString(1));
+        }
+    }
+
+    private static void execute(Connection connection, String sql, UUID... ids) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < ids.length; i++) {
+                statement.setBytes(i + 1, ByteBuffer.allocate(16)
+                        .putLong(ids[i].getMostSignificantBits())
+                        .putLong(ids[i].getLeastSignificantBits())
+                        .array());
+            }
+            statement.executeUpdate();
+        }
+    }
+}
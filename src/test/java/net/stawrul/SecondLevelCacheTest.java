@@ -0,0 +1,129 @@
+package net.stawrul;
+
+import net.stawrul.metrics.SecondLevelCacheMetrics;
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test pamięci podręcznej drugiego poziomu dla książek i zapytania Book.FIND_ALL na wbudowanej bazie Derby.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        //zestawienie sprzedaży nie jest zapisywane w tle - jego zapytania nie są wliczane do statystyk
+        "bookshop.sales.flush-interval-ms=3600000"})
+@AutoConfigureTestDatabase
+public class SecondLevelCacheTest {
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Autowired
+    private SecondLevelCacheMetrics secondLevelCache;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    private Statistics statistics;
+
+    private Book book;
+
+    @Before
+    public void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        book = new Book();
+        book.setTitle("Hot title");
+        book.setCost(10);
+        book.setAmount(100);
+        booksService.addBook(book);
+    }
+
+    @Test
+    public void whenOrderIsValidatedRepeatedly_booksAreReadFromCache() {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 2));
+
+        ordersService.validateOrder(order);
+        assertEquals(0, countStatements(() -> ordersService.validateOrder(order)));
+
+        booksService.findAll();
+        assertEquals(0, countStatements(() -> assertTrue(booksService.findAll().contains(book))));
+
+        Map<String, Long> region = secondLevelCache.regions().entrySet().stream()
+                .filter(entry -> entry.getKey().endsWith(Book.class.getName()))
+                .findFirst().get().getValue();
+        assertTrue(region.get("hits") > 0);
+    }
+
+    @Test
+    public void whenOrderIsPlaced_cachedStockIsUpdated() {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 3));
+        ordersService.findBooks(order);
+
+        ordersService.placeOrder(order);
+
+        Order next = new Order();
+        next.getLines().add(new OrderLine(book.getId(), 1));
+        assertEquals(Integer.valueOf(97), ordersService.findBooks(next).get(book.getId()).getAmount());
+        assertEquals(Integer.valueOf(97), booksService.findAll().stream()
+                .filter(book::equals).findFirst().get().getAmount());
+    }
+
+    @Test
+    public void whenStockIsReservedByQuery_otherBooksStayCached() {
+        Book other = new Book();
+        other.setTitle("Other title");
+        other.setCost(10);
+        other.setAmount(100);
+        booksService.addBook(other);
+        booksService.find(book.getId());
+        booksService.find(other.getId());
+
+        Order order = new Order();
+        order.getLines().add(new OrderLine(book.getId(), 3));
+        ordersService.setStockMode(OrdersService.StockMode.CONDITIONAL_UPDATE);
+        try {
+            ordersService.placeOrder(order);
+        } finally {
+            ordersService.setStockMode(OrdersService.StockMode.ENTITY);
+        }
+
+        Cache cache = emf.getCache();
+        assertFalse(cache.contains(Book.class, book.getId()));
+        assertTrue(cache.contains(Book.class, other.getId()));
+        assertEquals(0, countStatements(() -> booksService.find(other.getId())));
+        assertEquals(Integer.valueOf(97), booksService.find(book.getId()).getAmount());
+    }
+
+    private long countStatements(Runnable action) {
+        long before = statistics.getPrepareStatementCount();
+        action.run();
+        return statistics.getPrepareStatementCount() - before;
+    }
+}
@@ -0,0 +1,55 @@
+package net.stawrul;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test metryk serwisów i liczby zapytań SQL na żądanie HTTP.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+public class ServiceMetricsTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private MetricRegistry registry;
+
+    @Test
+    public void whenOrderIsRejected_rejectionIsCountedByReason() throws Exception {
+        long before = registry.meter("meter.orders.rejected.empty-order").getCount();
+
+        mvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content("{\"books\": []}"))
+                .andExpect(status().isUnprocessableEntity());
+
+        assertEquals(before + 1, registry.meter("meter.orders.rejected.empty-order").getCount());
+        assertTrue(registry.timer("timer.orders.place").getCount() > 0);
+    }
+
+    @Test
+    public void whenRequestIsHandled_sqlStatementsAreRecorded() throws Exception {
+        long before = registry.histogram("histogram.http.sql.statements").getCount();
+
+        mvc.perform(get("/books")).andExpect(status().isOk());
+
+        assertEquals(before + 1, registry.histogram("histogram.http.sql.statements").getCount());
+        assertTrue(registry.histogram("histogram.http.sql.statements").getSnapshot().getMax() >= 1);
+    }
+}
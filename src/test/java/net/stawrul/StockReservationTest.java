@@ -0,0 +1,91 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.exceptions.ValidationException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test trybu CONDITIONAL_UPDATE na wbudowanej bazie Derby - równoległe zamówienia tego samego tytułu.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "bookshop.orders.stock-mode=CONDITIONAL_UPDATE")
+@AutoConfigureTestDatabase
+public class StockReservationTest {
+
+    private static final int THREADS = 16;
+    private static final int ORDERS_PER_THREAD = 10;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private OrdersService ordersService;
+
+    @Test
+    public void whenManyThreadsOrderSameBook_stockNeverGoesNegative() throws Exception {
+        Book book = new Book();
+        book.setTitle("Bestseller");
+        book.setCost(10);
+        book.setAmount(25);
+        booksService.addBook(book);
+
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < ORDERS_PER_THREAD; j++) {
+                    //każde zamówienie obejmuje dwie sztuki tej samej książki
+                    Order order = new Order();
+                    order.getBooks().add(new Book(book.getId()));
+                    order.getBooks().add(new Book(book.getId()));
+                    try {
+                        ordersService.placeOrder(order);
+                        accepted.incrementAndGet();
+                    } catch (ValidationException e) {
+                        assertEquals("Book out of stock", e.getMessage());
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        //z 25 sztuk można sprzedać 12 zamówień po 2 sztuki, ostatnia sztuka nie wystarcza na kolejne zamówienie
+        assertEquals(12, accepted.get());
+        assertEquals(THREADS * ORDERS_PER_THREAD - 12, rejected.get());
+        assertEquals(Integer.valueOf(1), booksService.find(book.getId()).getAmount());
+    }
+}